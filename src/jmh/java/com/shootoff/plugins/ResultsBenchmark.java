@@ -0,0 +1,80 @@
+package com.shootoff.plugins;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of producing the results screen numbers for a drill of a given size: the incremental statistics
+ * snapshot the exercise uses against a full pass over the recorded shots.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultsBenchmark {
+	@Param({ "10", "1000", "10000", "100000" })
+	public int shots;
+
+	private ShotStore shotStore;
+	private DrillStatistics drillStatistics;
+
+	@Setup
+	public void setUp() {
+		shotStore = new ShotStore(shots);
+		drillStatistics = new DrillStatistics();
+
+		final Random random = new Random(42);
+		for (int i = 0; i < shots; i++) {
+			final boolean missedPar = random.nextInt(10) == 0;
+			final boolean hit = !missedPar && random.nextInt(5) != 0;
+			final float time = missedPar ? 4.0f : 0.8f + random.nextFloat() * 2;
+			final int points = hit ? 1 + random.nextInt(10) : 0;
+			final int flags = (hit ? ShotStore.FLAG_HIT : 0) | (missedPar ? ShotStore.FLAG_MISSED_PAR : 0);
+			shotStore.record(time, random.nextDouble() * 1024, random.nextDouble() * 768, 300, 200, points, i / 3, 0, flags);
+			drillStatistics.add(time, points, hit, missedPar);
+		}
+	}
+
+	@Benchmark
+	public DrillStatistics.Snapshot snapshot() {
+		return drillStatistics.snapshot();
+	}
+
+	@Benchmark
+	public double fullPass() {
+		int numMisses = 0;
+		int numParMisses = 0;
+		int pointsTotal = 0;
+		float timeTotal = 0;
+		float minTime = Float.MAX_VALUE;
+		float maxTime = 0;
+		for (int i = 0; i < shotStore.size(); i++) {
+			if (!shotStore.isHit(i) && !shotStore.isMissedPar(i)) {
+				numMisses++;
+			}
+			if (shotStore.isMissedPar(i)) {
+				numParMisses++;
+			}
+			final float time = shotStore.getTime(i);
+			timeTotal += time;
+			minTime = Math.min(time, minTime);
+			maxTime = Math.max(time, maxTime);
+			pointsTotal += shotStore.getPoints(i);
+		}
+		return timeTotal + minTime + maxTime + pointsTotal + numMisses + numParMisses;
+	}
+}
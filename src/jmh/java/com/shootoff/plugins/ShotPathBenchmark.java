@@ -0,0 +1,157 @@
+package com.shootoff.plugins;
+
+import com.shootoff.camera.shot.ShotColor;
+import javafx.geometry.Dimension2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-shot cost of the work {@code RandomTargetParDrill} does for a shot. The benchmarks call the same
+ * clock, filter, scoring and recording code as the exercise's shot pipeline, with stand-ins for
+ * ShootOFF's shots. Run with {@code -prof gc} to see the allocation rate of each path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShotPathBenchmark {
+	private static final int SHOTS = 1024;
+	private static final int RETENTION = 4096;
+
+	private final StubShot[] shots = new StubShot[SHOTS];
+	private final StubHit[] hits = new StubHit[SHOTS];
+	private final ShotPipeline.ShotEvent event = new ShotPipeline.ShotEvent();
+
+	private ScoringIndex scoringIndex;
+	private RoundTargets.Layout layout;
+	private ShotClock shotClock;
+	private ShotRecorder shotRecorder;
+	private ShotFilter shotFilter;
+	private List<LegacyTrackedShot> legacyShots;
+	private int next;
+	private long filterClock;
+
+	@Setup
+	public void setUp() throws IOException {
+		try (InputStream targetFile = ShotPathBenchmark.class.getResourceAsStream("/targets/ISSF.target")) {
+			scoringIndex = ScoringIndex.compile(targetFile);
+		}
+
+		// One target of 400 by 400 pixels placed somewhere on a 1280 by 720 arena
+		final Dimension2D dimension = new Dimension2D(400, 400);
+		layout = RoundTargets.layout(DrillPlan.generate(42, 1, 1, 0, 0, 0, 1, 1, 0), 0, 0, 0, 1280 - dimension.getWidth(),
+				720 - dimension.getHeight(), dimension, dimension);
+		final double targetX = layout.getX(0);
+		final double targetY = layout.getY(0);
+
+		shotClock = new ShotClock(LatencyCalibration.load());
+		shotClock.markBeep();
+		final ShotStore shotStore = new ShotStore(RETENTION);
+		shotRecorder = new ShotRecorder(shotStore, new MarkerRegistry(shotStore.capacity()), new DrillStatistics(),
+				new GroupStatistics(), new RoundTargets(file -> Optional.empty(), null, null));
+		shotFilter = new ShotFilter(120, TimeUnit.MILLISECONDS, 20);
+		legacyShots = new LinkedList<>();
+
+		final Random random = new Random(42);
+		for (int i = 0; i < SHOTS; i++) {
+			final double x = targetX - 50 + random.nextDouble() * (dimension.getWidth() + 100);
+			final double y = targetY - 50 + random.nextDouble() * (dimension.getHeight() + 100);
+			shots[i] = new StubShot(x, y, i * 5L + 1);
+
+			final int region = layout.region(scoringIndex, layout.targetAt(x, y, scoringIndex, null), x, y);
+			if (region != ScoringIndex.NO_REGION) {
+				hits[i] = new StubHit(new StubTargetRegion(scoringIndex.points(region)), (int) (x - targetX),
+						(int) (y - targetY));
+			}
+		}
+	}
+
+	private int nextShot() {
+		final int shot = next;
+		next = (next + 1) & (SHOTS - 1);
+		return shot;
+	}
+
+	/**
+	 * The shot clock, the scoring stage's attribution and scoring and the storing stage, as the exercise
+	 * runs them for a shot outside of program drills with archiving off.
+	 */
+	@Benchmark
+	public int shotListener() throws IOException {
+		final int i = nextShot();
+		final StubShot shot = shots[i];
+
+		final long captured = shotClock.captureTime(shot.timestamp);
+		event.time = shotClock.secondsSinceBeep(captured);
+		event.score(layout, scoringIndex, null, shot.arenaX, shot.arenaY, hits[i] != null);
+		event.round = 1;
+		return shotRecorder.record(event, shot.arenaX, shot.arenaY, null, scoringIndex, null, null);
+	}
+
+	/**
+	 * The merge check every detection passes before it is published, spaced so that no shot is merged
+	 * and the whole ring is searched.
+	 */
+	@Benchmark
+	public boolean shotFilter() {
+		final int i = nextShot();
+		final StubShot shot = shots[i];
+		filterClock += TimeUnit.MILLISECONDS.toNanos(200);
+		return shotFilter.accept(filterClock, shot.arenaX, shot.arenaY, ShotColor.RED);
+	}
+
+	@Benchmark
+	public int legacyShotListener() {
+		final int i = nextShot();
+		final StubShot shot = shots[i];
+		final StubHit hit = hits[i];
+
+		final float time = (float) (System.currentTimeMillis() - shot.timestamp) / (float) 1000;
+		int points = 0;
+		if (hit != null && hit.region.tagExists("points")) {
+			points = Integer.parseInt(hit.region.getTag("points"));
+		}
+
+		legacyShots.add(new LegacyTrackedShot(new double[] { layout.getX(0), layout.getY(0) },
+				new double[] { shot.arenaX, shot.arenaY }, hit, time));
+		if (legacyShots.size() > RETENTION) {
+			legacyShots.remove(0);
+		}
+		return points;
+	}
+
+	/**
+	 * Shape of the per-shot record the exercise kept before the columnar store.
+	 */
+	private static final class LegacyTrackedShot {
+		final double[] targetPos;
+		final double[] arenaShotPos;
+		final StubHit hit;
+		final float shotTime;
+
+		LegacyTrackedShot(double[] targetPos, double[] arenaShotPos, StubHit hit, float shotTime) {
+			this.targetPos = targetPos;
+			this.arenaShotPos = arenaShotPos;
+			this.hit = hit;
+			this.shotTime = shotTime;
+		}
+	}
+}
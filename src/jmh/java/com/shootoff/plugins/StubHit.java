@@ -0,0 +1,16 @@
+package com.shootoff.plugins;
+
+/**
+ * Stand-in for ShootOFF's {@code Hit}.
+ */
+final class StubHit {
+	final StubTargetRegion region;
+	final int impactX;
+	final int impactY;
+
+	StubHit(StubTargetRegion region, int impactX, int impactY) {
+		this.region = region;
+		this.impactX = impactX;
+		this.impactY = impactY;
+	}
+}
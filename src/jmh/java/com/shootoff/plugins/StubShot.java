@@ -0,0 +1,16 @@
+package com.shootoff.plugins;
+
+/**
+ * Stand-in for ShootOFF's {@code ArenaShot}: only the values the exercise reads on the shot path.
+ */
+final class StubShot {
+	final double arenaX;
+	final double arenaY;
+	final long timestamp;
+
+	StubShot(double arenaX, double arenaY, long timestamp) {
+		this.arenaX = arenaX;
+		this.arenaY = arenaY;
+		this.timestamp = timestamp;
+	}
+}
@@ -0,0 +1,23 @@
+package com.shootoff.plugins;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Stand-in for ShootOFF's {@code TargetRegion}, backed by a tag map like the real regions.
+ */
+final class StubTargetRegion {
+	private final Map<String, String> tags;
+
+	StubTargetRegion(int points) {
+		tags = Collections.singletonMap("points", String.valueOf(points));
+	}
+
+	boolean tagExists(String name) {
+		return tags.containsKey(name);
+	}
+
+	String getTag(String name) {
+		return tags.get(name);
+	}
+}
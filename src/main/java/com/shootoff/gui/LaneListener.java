@@ -0,0 +1,7 @@
+package com.shootoff.gui;
+
+public interface LaneListener {
+	void updateLanes(int lanes, boolean byColor);
+	int getLanes();
+	boolean isLaneByColor();
+}
@@ -0,0 +1,7 @@
+package com.shootoff.gui;
+
+public interface TargetCountListener {
+	void updateTargetCount(int targets, int noShoots);
+	int getTargetCount();
+	int getNoShootCount();
+}
@@ -0,0 +1,143 @@
+package com.shootoff.plugins;
+
+import com.shootoff.gui.LocatedImage;
+import com.shootoff.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of the drill's parsed assets: compiled {@link ScoringIndex}es, decoded images and
+ * sound cues decoded to PCM. All of them are immutable once loaded, so every exercise instance shares
+ * them and only creates what is bound to it, such as its audio lines.
+ *
+ * Assets are loaded in parallel on a few background threads as soon as they are first requested, which
+ * {@link RandomTargetParDrill} does when its class is loaded. Later requests for the same resource get
+ * the same pending or finished load. Resources starting with {@code /} are read from the classpath,
+ * all others from the file system relative to ShootOFF's working directory. A failed load is logged
+ * and forgotten, so the next request tries again.
+ */
+final class AssetCache {
+	private static final Logger logger = LoggerFactory.getLogger(AssetCache.class);
+
+	private static final int LOADERS = 3;
+	private static final long LOADER_KEEP_ALIVE = 10; // s
+
+	private static final Map<String, CompletableFuture<?>> assets = new ConcurrentHashMap<>();
+	private static final ThreadPoolExecutor loaders = new ThreadPoolExecutor(LOADERS, LOADERS, LOADER_KEEP_ALIVE,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemon(new NamedThreadFactory("RandomTargetParDrill-assets")));
+
+	static {
+		// Nothing is left running once the assets are loaded
+		loaders.allowCoreThreadTimeOut(true);
+	}
+
+	private AssetCache() {
+	}
+
+	private static ThreadFactory daemon(ThreadFactory threadFactory) {
+		return (runnable) -> {
+			final Thread thread = threadFactory.newThread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Starts loading the given assets without waiting for them.
+	 */
+	static void preload(String[] targets, String[] images, String[] sounds) {
+		for (String target : targets) {
+			scoringIndex(target);
+		}
+		for (String image : images) {
+			image(image);
+		}
+		for (String sound : sounds) {
+			sound(sound);
+		}
+	}
+
+	static CompletableFuture<ScoringIndex> scoringIndex(String resource) {
+		return load("index:" + resource, resource, ScoringIndex::compile);
+	}
+
+	static CompletableFuture<LocatedImage> image(String resource) {
+		return load("image:" + resource, resource, (in) -> new LocatedImage(in, resource));
+	}
+
+	static CompletableFuture<AudioCueCache.DecodedCue> sound(String resource) {
+		return load("sound:" + resource, resource, AudioCueCache::decode);
+	}
+
+	/**
+	 * Waits for an asset.
+	 *
+	 * @return the asset, or null if it could not be loaded
+	 */
+	static <T> T await(CompletableFuture<T> asset) {
+		try {
+			return asset.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> CompletableFuture<T> load(String key, String resource, Loader<T> loader) {
+		final CompletableFuture<?> previous = assets.get(key);
+		if (previous != null && previous.isCompletedExceptionally()) {
+			assets.remove(key, previous);
+		}
+
+		return (CompletableFuture<T>) assets.computeIfAbsent(key, (k) -> CompletableFuture.supplyAsync(() -> {
+			final long started = System.nanoTime();
+			try (InputStream in = open(resource)) {
+				final T loaded = loader.load(in);
+				logger.debug("Loaded {} in {} us", resource, (System.nanoTime() - started) / 1000);
+				return loaded;
+			} catch (Exception e) {
+				logger.warn("Could not load asset {}", resource, e);
+				throw new AssetException(resource, e);
+			}
+		}, loaders));
+	}
+
+	private static InputStream open(String resource) throws IOException {
+		if (!resource.startsWith("/")) {
+			return new FileInputStream(resource);
+		}
+
+		final InputStream in = AssetCache.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IOException("Missing resource " + resource);
+		}
+		return in;
+	}
+
+	private interface Loader<T> {
+		T load(InputStream in) throws Exception;
+	}
+
+	private static final class AssetException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private AssetException(String resource, Exception cause) {
+			super("Could not load " + resource, cause);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the drill's sound cues decoded to PCM in memory, each behind already opened {@link Clip}s.
+ *
+ * Playing a cue rewinds and starts a clip, which involves no file access or format parsing. Every cue
+ * has one clip per voice, so lanes playing the same cue at about the same time each play their own
+ * and none cuts off another lane's sound. The cache measures, for every clip, the time from issuing the
+ * cue until the line reports that it started and keeps a smoothed value of it for diagnostics and for
+ * timing corrections.
+ */
+class AudioCueCache implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(AudioCueCache.class);
+
+	private static final int LATENCY_SMOOTHING = 4;
+	private static final long OUTPUT_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+	// How often the frame position is checked while measuring, which bounds the measurement's error
+	private static final long OUTPUT_POLL = TimeUnit.MICROSECONDS.toNanos(250);
+
+	private final int voices;
+	private final Map<String, CachedCue[]> cues = new ConcurrentHashMap<>();
+
+	/**
+	 * @param voices how many clips to open per cue, the number of sounds that can play at once
+	 */
+	AudioCueCache(int voices) {
+		this.voices = voices;
+	}
+
+	/**
+	 * Opens the lines for a decoded cue, see {@link #decode(InputStream)}. Failures are logged; if not even
+	 * one line opens the cue stays uncached, in which case {@link #play(String, int)} returns false. If
+	 * only some open, voices share them.
+	 *
+	 * @return true if the cue is ready to play
+	 */
+	boolean load(String cue, DecodedCue decoded) {
+		final CachedCue[] opened = new CachedCue[voices];
+		int count = 0;
+		for (; count < voices; count++) {
+			try {
+				opened[count] = open(decoded);
+			} catch (LineUnavailableException | IllegalArgumentException e) {
+				logger.warn("Could not open line {} of {} for sound cue {}", count + 1, voices, cue, e);
+				break;
+			}
+		}
+		if (count == 0) {
+			return false;
+		}
+
+		final CachedCue[] previous = cues.put(cue, count == voices ? opened : Arrays.copyOf(opened, count));
+		if (previous != null) {
+			close(previous);
+		}
+		return true;
+	}
+
+	private static CachedCue open(DecodedCue decoded) throws LineUnavailableException {
+		final Clip clip = AudioSystem.getClip();
+		clip.open(decoded.format, decoded.data, 0, decoded.data.length);
+
+		final CachedCue cached = new CachedCue(clip);
+		clip.addLineListener((event) -> {
+			if (event.getType() == LineEvent.Type.START) {
+				cached.started(System.nanoTime());
+			}
+		});
+		return cached;
+	}
+
+	/**
+	 * Decodes a sound file to PCM and closes the stream. Decoded cues are immutable and can be shared.
+	 */
+	static DecodedCue decode(InputStream in) throws IOException, UnsupportedAudioFileException {
+		try (AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(in))) {
+			final AudioInputStream pcm = toPcm(source);
+			return new DecodedCue(pcm.getFormat(), readFully(pcm));
+		} finally {
+			in.close();
+		}
+	}
+
+	private static AudioInputStream toPcm(AudioInputStream source) {
+		final AudioFormat format = source.getFormat();
+		if (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED
+				|| format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED) {
+			return source;
+		}
+
+		final AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+				format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+		return AudioSystem.getAudioInputStream(pcmFormat, source);
+	}
+
+	private static byte[] readFully(AudioInputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	boolean isLoaded(String cue) {
+		return cues.containsKey(cue);
+	}
+
+	/**
+	 * Starts a cue from its beginning on the given voice, cutting off the cue if that voice still plays
+	 * it. Other voices keep playing.
+	 *
+	 * @param voice the voice, such as a lane's number
+	 * @return false if the cue is not cached and the caller has to play it some other way
+	 */
+	boolean play(String cue, int voice) {
+		final CachedCue[] cached = cues.get(cue);
+		if (cached == null) {
+			return false;
+		}
+
+		cached[voice % cached.length].play();
+		return true;
+	}
+
+	/**
+	 * @return the smoothed time between issuing the cue on its first voice and the line starting, in
+	 *         nanoseconds, or 0 if the cue has not been played there yet
+	 */
+	long getStartLatency(String cue) {
+		final CachedCue[] cached = cues.get(cue);
+		return cached == null ? 0 : cached[0].startLatency;
+	}
+
+	/**
+	 * Plays the cue and blocks until the line reports that frames are being rendered. The thread parks
+	 * between checks of the frame position instead of spinning, so a measurement keeps no CPU busy while
+	 * the output starts.
+	 *
+	 * @return the time from issuing the cue until frames were rendered, or -1 if the cue is not cached
+	 *         nothing was rendered within two seconds or the thread was interrupted
+	 */
+	long measureOutputLatency(String cue) {
+		final CachedCue[] voices = cues.get(cue);
+		if (voices == null) {
+			return -1;
+		}
+
+		final CachedCue cached = voices[0];
+		synchronized (cached) {
+			final long issued = cached.play();
+			long now = issued;
+			while (cached.clip.getLongFramePosition() == 0 && now - issued < OUTPUT_TIMEOUT) {
+				LockSupport.parkNanos(this, OUTPUT_POLL);
+				if (Thread.interrupted()) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+				now = System.nanoTime();
+			}
+			return now - issued < OUTPUT_TIMEOUT ? now - issued : -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		for (CachedCue[] cached : cues.values()) {
+			close(cached);
+		}
+		cues.clear();
+	}
+
+	private static void close(CachedCue[] cached) {
+		for (CachedCue voice : cached) {
+			voice.clip.close();
+		}
+	}
+
+	/**
+	 * A sound cue decoded to PCM, not yet bound to a line.
+	 */
+	static final class DecodedCue {
+		private final AudioFormat format;
+		private final byte[] data;
+
+		private DecodedCue(AudioFormat format, byte[] data) {
+			this.format = format;
+			this.data = data;
+		}
+	}
+
+	private static final class CachedCue {
+		private final Clip clip;
+		private volatile long issued = 0;
+		private volatile long startLatency = 0;
+
+		private CachedCue(Clip clip) {
+			this.clip = clip;
+		}
+
+		synchronized long play() {
+			clip.stop();
+			clip.setFramePosition(0);
+			issued = System.nanoTime();
+			clip.start();
+			return issued;
+		}
+
+		private void started(long at) {
+			final long sample = at - issued;
+			if (issued == 0 || sample < 0) {
+				return;
+			}
+			startLatency = startLatency == 0 ? sample : startLatency + (sample - startLatency) / LATENCY_SMOOTHING;
+			logger.trace("Sound cue started {} us after it was issued", sample / 1000);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.shootoff.plugins;
+
+/**
+ * Side effects of the drill engine. The exercise implements these against the ShootOFF arena; the
+ * simulator implements them headless.
+ */
+interface DrillHost {
+	/**
+	 * Announces the next round and pauses shot detection until it starts.
+	 */
+	void makeReady();
+
+	/**
+	 * Sounds the start beep, places and shows the round's targets as planned and updates the round
+	 * display.
+	 *
+	 * @param round the round number, starting at 1; its placements are {@code round - 1} in the plan
+	 * @return the beep onset on the scheduler clock; the par time is measured from it
+	 */
+	long startRound(int round, DrillPlan plan);
+
+	void setShotDetection(boolean enabled);
+
+	/**
+	 * The round ended without a shot. Reported shortly after the round closed, once no shot captured
+	 * before the par expired can still arrive.
+	 *
+	 * @param round the round that was missed
+	 * @param parExpired the time the par expired on the scheduler clock
+	 */
+	void parMissed(int round, long parExpired);
+
+	/**
+	 * The round ended, either on the first shot or because the par time expired.
+	 */
+	void roundClosed(int round);
+
+	/**
+	 * Called between rounds, before the next round is scheduled.
+	 */
+	void prepareNextRound(boolean hadShot);
+
+	void hideTarget();
+
+	void showResults();
+}
@@ -0,0 +1,148 @@
+package com.shootoff.plugins;
+
+import com.shootoff.camera.shot.ShotColor;
+import javafx.geometry.Dimension2D;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * One shooter's drill when several shooters share the arena. Every lane owns a vertical strip of the
+ * arena with its own target, its own {@link ParDrillEngine} and its own statistics; all lanes run on
+ * one shared scheduler through their own {@link LaneScheduler}.
+ */
+class DrillLane {
+	static final int MAX_LANES = 4;
+
+	/**
+	 * How shots are assigned to lanes.
+	 */
+	enum LaneKey {
+		/** Each lane has its own laser color; only red and infrared are scored, so at most two lanes. */
+		COLOR,
+		/** Each lane gets the shots landing in its strip of the arena. */
+		REGION
+	}
+
+	static final int NO_LANE = -1;
+
+	private static final int MAX_ROUND_MARKERS = 64;
+	private static final double PLACEMENT_MARGIN = 50;
+
+	private final int number;
+	private final double originX;
+	private final double width;
+	private final ParDrillEngine engine;
+	private final RoundTargets targets;
+	private final DrillStatistics statistics = new DrillStatistics();
+
+	private double placementWidth = 0;
+	private double placementHeight = 0;
+	private volatile long beepNanos = 0;
+	private final AtomicInteger score = new AtomicInteger();
+	private final int[] roundMarkers = new int[MAX_ROUND_MARKERS];
+	private int roundMarkerCount = 0;
+
+	/**
+	 * @param number the lane's index, starting at 0 from the left of the arena
+	 * @param host creates the lane's host once the lane exists
+	 */
+	DrillLane(int number, double originX, double width, DrillScheduler shared, DrillMetrics metrics,
+			RoundTargets targets, Function<DrillLane, DrillHost> host) {
+		this.number = number;
+		this.originX = originX;
+		this.width = width;
+		this.targets = targets;
+		engine = new ParDrillEngine(host.apply(this), new LaneScheduler(shared), metrics);
+	}
+
+	/**
+	 * @return the lane the shot belongs to, or {@link #NO_LANE}
+	 */
+	static int route(LaneKey key, ShotColor color, double arenaX, double arenaWidth, int lanes) {
+		if (key == LaneKey.COLOR) {
+			final int lane = color == ShotColor.RED ? 0 : color == ShotColor.INFRARED ? 1 : NO_LANE;
+			return lane < lanes ? lane : NO_LANE;
+		}
+
+		if (arenaX < 0 || arenaX >= arenaWidth) {
+			return NO_LANE;
+		}
+		return Math.min(lanes - 1, (int) (arenaX * lanes / arenaWidth));
+	}
+
+	/**
+	 * Generates the lane's drill for a target placed anywhere in the lane's strip.
+	 */
+	DrillPlan plan(long seed, double arenaHeight) {
+		final Dimension2D largest = targets.getMaxDimension();
+		placementWidth = Math.max(0, width - largest.getWidth());
+		placementHeight = Math.max(0, arenaHeight - largest.getHeight() - PLACEMENT_MARGIN);
+		return engine.newDrill(seed, placementWidth, placementHeight, Math.max(largest.getWidth(), largest.getHeight()));
+	}
+
+	/**
+	 * Positions the round's target in the lane's strip, still hidden.
+	 *
+	 * @param round the round number, starting at 1
+	 */
+	void placeTargets(DrillPlan plan, int round) {
+		targets.place(plan, round - 1, originX, 0, placementWidth, placementHeight);
+	}
+
+	int getNumber() {
+		return number;
+	}
+
+	double getOriginX() {
+		return originX;
+	}
+
+	ParDrillEngine getEngine() {
+		return engine;
+	}
+
+	RoundTargets getTargets() {
+		return targets;
+	}
+
+	DrillStatistics getStatistics() {
+		return statistics;
+	}
+
+	long getBeepNanos() {
+		return beepNanos;
+	}
+
+	void setBeepNanos(long beepNanos) {
+		this.beepNanos = beepNanos;
+	}
+
+	int getScore() {
+		return score.get();
+	}
+
+	void addPoints(int points) {
+		score.addAndGet(points);
+	}
+
+	/**
+	 * Remembers the marker of a shot of the current round so it can be hidden with the lane's target.
+	 */
+	synchronized void addRoundMarker(int slot) {
+		if (roundMarkerCount < roundMarkers.length) {
+			roundMarkers[roundMarkerCount++] = slot;
+		}
+	}
+
+	/**
+	 * Hands the markers of the current round to the consumer and forgets them.
+	 */
+	synchronized void takeRoundMarkers(IntConsumer consumer) {
+		for (int i = 0; i < roundMarkerCount; i++) {
+			consumer.accept(roundMarkers[i]);
+		}
+		roundMarkerCount = 0;
+	}
+}
@@ -0,0 +1,107 @@
+package com.shootoff.plugins;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process registry of the drill's timing internals. Every measurement goes into a histogram and is
+ * also emitted as a flight recorder event when a recording is running, so a slow range PC can be
+ * diagnosed from a JFR file or from the summary without turning on logging.
+ */
+class DrillMetrics {
+	private static final FlightEvents.EventType ROUND_START = FlightEvents.define("com.shootoff.RoundStart",
+			"Round Start", "round", "startLateness", "beepOnset");
+	private static final FlightEvents.EventType PAR_EXPIRY = FlightEvents.define("com.shootoff.ParExpiry",
+			"Par Expiry", "round", "lateness");
+	private static final FlightEvents.EventType SHOT_RECEIVED = FlightEvents.define("com.shootoff.ShotReceived",
+			"Shot Received", "round", "beepToShot", "inRound");
+	private static final FlightEvents.EventType FX_QUEUE_DELAY = FlightEvents.define("com.shootoff.FxQueueDelay",
+			"FX Queue Delay", "delay");
+	private static final FlightEvents.EventType SCHEDULER_LATENESS = FlightEvents
+			.define("com.shootoff.SchedulerLateness", "Scheduler Lateness", "lateness");
+
+	private final LatencyHistogram beepToShot = new LatencyHistogram("Beep to shot");
+	private final LatencyHistogram fxQueueDelay = new LatencyHistogram("FX queue delay");
+	private final LatencyHistogram schedulingDrift = new LatencyHistogram("Scheduling drift");
+
+	private final LongAdder roundsStarted = new LongAdder();
+	private final LongAdder parExpiries = new LongAdder();
+	private final LongAdder shotsReceived = new LongAdder();
+
+	/**
+	 * @param startLateness how late the round task ran after its deadline
+	 * @param beepOnset the estimated beep onset on the drill clock
+	 */
+	void roundStarted(int round, long startLateness, long beepOnset) {
+		roundsStarted.increment();
+		if (ROUND_START.isEnabled()) {
+			ROUND_START.commit(round, startLateness, beepOnset);
+		}
+	}
+
+	void parExpired(int round, long lateness) {
+		parExpiries.increment();
+		if (PAR_EXPIRY.isEnabled()) {
+			PAR_EXPIRY.commit(round, lateness);
+		}
+	}
+
+	void shotReceived(int round, long sinceBeep, boolean inRound) {
+		shotsReceived.increment();
+		if (inRound) {
+			beepToShot.record(sinceBeep);
+		}
+		if (SHOT_RECEIVED.isEnabled()) {
+			SHOT_RECEIVED.commit(round, sinceBeep, inRound ? 1 : 0);
+		}
+	}
+
+	/**
+	 * @param delay time between requesting a change on the FX thread and the change being applied
+	 */
+	void fxQueueDelay(long delay) {
+		fxQueueDelay.record(delay);
+		if (FX_QUEUE_DELAY.isEnabled()) {
+			FX_QUEUE_DELAY.commit(delay);
+		}
+	}
+
+	/**
+	 * @param lateness time between a task's deadline and the task starting
+	 */
+	void schedulingLateness(long lateness) {
+		schedulingDrift.record(lateness);
+		if (SCHEDULER_LATENESS.isEnabled()) {
+			SCHEDULER_LATENESS.commit(lateness);
+		}
+	}
+
+	LatencyHistogram getBeepToShot() {
+		return beepToShot;
+	}
+
+	LatencyHistogram getFxQueueDelay() {
+		return fxQueueDelay;
+	}
+
+	LatencyHistogram getSchedulingDrift() {
+		return schedulingDrift;
+	}
+
+	long getRoundsStarted() {
+		return roundsStarted.sum();
+	}
+
+	long getParExpiries() {
+		return parExpiries.sum();
+	}
+
+	long getShotsReceived() {
+		return shotsReceived.sum();
+	}
+
+	String summary() {
+		return String.format("Rounds: %d, par expiries: %d, shots: %d\n%s\n%s\n%s", getRoundsStarted(),
+				getParExpiries(), getShotsReceived(), beepToShot.summary(), fxQueueDelay.summary(),
+				schedulingDrift.summary());
+	}
+}
@@ -0,0 +1,185 @@
+package com.shootoff.plugins;
+
+import java.util.Random;
+
+/**
+ * Everything random about one drill, generated up front from a seed: where the targets appear in each
+ * round, which of them are no-shoot targets, how long the shooter waits for each beep and when the
+ * targets are hidden again. The same seed and settings always give the same plan, so a drill can be
+ * replayed exactly.
+ *
+ * Placements are spread with best-candidate sampling, an approximation of Poisson-disk sampling: each
+ * placement is the candidate farthest from the recent placements among those at least the minimum
+ * travel distance away from the same target's previous placement and from the other targets of its
+ * round. Positions are stored as fractions of the placement area so the plan stays valid if the arena
+ * is resized.
+ */
+class DrillPlan {
+	private static final int CANDIDATES = 24;
+	private static final int SPACING_WINDOW = 16;
+
+	private final long seed;
+	private final int rounds;
+	private final int targets;
+	private final float[] x;
+	private final float[] y;
+	private final boolean[] noShoot;
+	private final int[] startDelay;
+	private final int[] hideDelay;
+
+	private DrillPlan(long seed, int rounds, int targets) {
+		this.seed = seed;
+		this.rounds = rounds;
+		this.targets = targets;
+		this.x = new float[rounds * targets];
+		this.y = new float[rounds * targets];
+		this.noShoot = new boolean[rounds * targets];
+		this.startDelay = new int[rounds];
+		this.hideDelay = new int[rounds];
+	}
+
+	/**
+	 * @param targets the number of targets shown in each round
+	 * @param noShoots how many of them are no-shoot targets; at least one target is always a shoot target
+	 * @param width the width of the area the targets' corners are placed in
+	 * @param height the height of the area the targets' corners are placed in
+	 * @param minTravel the minimum distance between a target's consecutive placements and between the
+	 *            targets of one round, in the units of the area
+	 */
+	static DrillPlan generate(long seed, int rounds, int targets, int noShoots, int delayMin, int delayMax,
+			double width, double height, double minTravel) {
+		final DrillPlan plan = new DrillPlan(seed, Math.max(rounds, 1), Math.max(targets, 1));
+		final Random random = new Random(seed);
+		final double w = width > 0 ? width : 1;
+		final double h = height > 0 ? height : 1;
+		final int noShootCount = Math.max(0, Math.min(noShoots, plan.targets - 1));
+
+		for (int round = 0; round < plan.rounds; round++) {
+			for (int target = 0; target < plan.targets; target++) {
+				plan.place(random, round, target, w, h, minTravel);
+			}
+			plan.chooseNoShoots(random, round, noShootCount);
+
+			plan.startDelay[round] = random.nextInt((delayMax - delayMin) + 1) + delayMin;
+			plan.hideDelay[round] = random.nextInt((Integer.max(delayMax / 2, delayMin) - delayMin) + 1) + delayMin;
+		}
+
+		// The targets are hidden before the next beep at the latest
+		for (int round = 0; round + 1 < plan.rounds; round++) {
+			plan.hideDelay[round] = Integer.min(plan.hideDelay[round], plan.startDelay[round + 1]);
+		}
+
+		return plan;
+	}
+
+	private void place(Random random, int round, int target, double w, double h, double minTravel) {
+		final int index = round * targets + target;
+		double bestX = 0;
+		double bestY = 0;
+		double bestSpacing = -1;
+		// Used if the area is too small for any candidate to keep its distance
+		double fallbackX = 0;
+		double fallbackY = 0;
+		double fallbackClearance = -1;
+
+		for (int candidate = 0; candidate < CANDIDATES; candidate++) {
+			final double cx = random.nextDouble() * w;
+			final double cy = random.nextDouble() * h;
+
+			double clearance = Double.MAX_VALUE;
+			if (round > 0) {
+				clearance = distance(cx, cy, index - targets, w, h);
+			}
+			for (int other = round * targets; other < index; other++) {
+				clearance = Math.min(clearance, distance(cx, cy, other, w, h));
+			}
+			if (clearance > fallbackClearance) {
+				fallbackClearance = clearance;
+				fallbackX = cx;
+				fallbackY = cy;
+			}
+			if (clearance < minTravel) {
+				continue;
+			}
+
+			double spacing = Double.MAX_VALUE;
+			for (int previous = Math.max(0, index - SPACING_WINDOW); previous < index; previous++) {
+				spacing = Math.min(spacing, distance(cx, cy, previous, w, h));
+			}
+
+			if (spacing > bestSpacing) {
+				bestSpacing = spacing;
+				bestX = cx;
+				bestY = cy;
+			}
+		}
+
+		if (bestSpacing < 0) {
+			bestX = fallbackX;
+			bestY = fallbackY;
+		}
+
+		x[index] = (float) (bestX / w);
+		y[index] = (float) (bestY / h);
+	}
+
+	private void chooseNoShoots(Random random, int round, int count) {
+		final int first = round * targets;
+		for (int chosen = 0; chosen < count; chosen++) {
+			// Pick uniformly among the targets not chosen yet
+			int remaining = random.nextInt(targets - chosen);
+			int target = 0;
+			while (noShoot[first + target] || remaining-- > 0) {
+				target++;
+			}
+			noShoot[first + target] = true;
+		}
+	}
+
+	private double distance(double px, double py, int placement, double w, double h) {
+		final double dx = px - x[placement] * w;
+		final double dy = py - y[placement] * h;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	long getSeed() {
+		return seed;
+	}
+
+	int getRounds() {
+		return rounds;
+	}
+
+	int getTargets() {
+		return targets;
+	}
+
+	/**
+	 * @return the horizontal placement of a target as a fraction of the placement area
+	 */
+	float getX(int round, int target) {
+		return x[(round % rounds) * targets + target];
+	}
+
+	float getY(int round, int target) {
+		return y[(round % rounds) * targets + target];
+	}
+
+	boolean isNoShoot(int round, int target) {
+		return noShoot[(round % rounds) * targets + target];
+	}
+
+	/**
+	 * @return seconds between the make ready cue or the close of the previous round and the beep
+	 */
+	int getStartDelay(int round) {
+		return startDelay[round % rounds];
+	}
+
+	/**
+	 * @return seconds between the close of the round and hiding its targets
+	 */
+	int getHideDelay(int round) {
+		return hideDelay[round % rounds];
+	}
+}
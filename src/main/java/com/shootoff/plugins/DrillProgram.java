@@ -0,0 +1,201 @@
+package com.shootoff.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of drill stages, each with its own par time, delay range, round count and targets,
+ * run back to back by a {@link ProgramSequencer}.
+ *
+ * Programs are text files with one stage per line. Words of the form {@code key=value} set the stage's
+ * settings, all other words make up its name; empty lines and lines starting with {@code #} are
+ * skipped. Settings a stage does not give are carried over from the stage before it, the first stage
+ * starts from the drill defaults. For example:
+ *
+ * <pre>
+ * # Qualification course
+ * Draw par=2.0 delay=2-4 rounds=5
+ * Transitions par=3.5 targets=3 rounds=4
+ * No-shoots targets=3 noShoots=1
+ * </pre>
+ *
+ * The keys are {@code par} in seconds, {@code delay} as a range of whole seconds or a single value,
+ * {@code rounds}, {@code targets} and {@code noShoots}.
+ */
+class DrillProgram {
+	private final List<Stage> stages;
+
+	private DrillProgram(List<Stage> stages) {
+		this.stages = Collections.unmodifiableList(stages);
+	}
+
+	static DrillProgram load(File file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			return parse(reader);
+		}
+	}
+
+	/**
+	 * @throws IOException if the program cannot be read, has a malformed line or has no stage
+	 */
+	static DrillProgram parse(Reader program) throws IOException {
+		final BufferedReader reader = program instanceof BufferedReader ? (BufferedReader) program
+				: new BufferedReader(program);
+		final List<Stage> stages = new ArrayList<>();
+		Stage previous = new Stage("", ParDrillEngine.DEFAULT_PAR_TIME, ParDrillEngine.DEFAULT_MIN_DELAY,
+				ParDrillEngine.DEFAULT_MAX_DELAY, ParDrillEngine.DEFAULT_MAX_ROUNDS, 1, 0);
+
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+
+			try {
+				previous = parseStage(line, previous, stages.size() + 1);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+			}
+			stages.add(previous);
+		}
+
+		if (stages.isEmpty()) {
+			throw new IOException("Program has no stages");
+		}
+		return new DrillProgram(stages);
+	}
+
+	private static Stage parseStage(String line, Stage previous, int number) {
+		final StringBuilder name = new StringBuilder();
+		double parTime = previous.parTime;
+		int delayMin = previous.delayMin;
+		int delayMax = previous.delayMax;
+		int rounds = previous.rounds;
+		int targets = previous.targets;
+		int noShoots = previous.noShoots;
+
+		for (String word : line.split("\\s+")) {
+			final int equals = word.indexOf('=');
+			if (equals < 0) {
+				if (name.length() > 0) {
+					name.append(' ');
+				}
+				name.append(word);
+				continue;
+			}
+
+			final String key = word.substring(0, equals);
+			final String value = word.substring(equals + 1);
+			switch (key) {
+			case "par":
+				parTime = Double.parseDouble(value);
+				break;
+			case "delay":
+				final int dash = value.indexOf('-');
+				delayMin = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+				delayMax = Integer.parseInt(dash < 0 ? value : value.substring(dash + 1));
+				break;
+			case "rounds":
+				rounds = Integer.parseInt(value);
+				break;
+			case "targets":
+				targets = Integer.parseInt(value);
+				break;
+			case "noShoots":
+				noShoots = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown setting " + key);
+			}
+		}
+
+		if (!(parTime > 0)) {
+			throw new IllegalArgumentException("Par time must be positive: " + parTime);
+		}
+		if (delayMin < 0 || delayMax < delayMin) {
+			throw new IllegalArgumentException("Invalid delay range " + delayMin + "-" + delayMax);
+		}
+		if (rounds < 1) {
+			throw new IllegalArgumentException("A stage needs at least one round");
+		}
+		if (targets < 1 || targets > RoundTargets.MAX_TARGETS) {
+			throw new IllegalArgumentException("Targets must be between 1 and " + RoundTargets.MAX_TARGETS);
+		}
+		if (noShoots < 0 || noShoots >= targets) {
+			throw new IllegalArgumentException("At least one target must be a shoot target");
+		}
+		return new Stage(name.length() > 0 ? name.toString() : "Stage " + number, parTime, delayMin, delayMax, rounds,
+				targets, noShoots);
+	}
+
+	int size() {
+		return stages.size();
+	}
+
+	Stage getStage(int stage) {
+		return stages.get(stage);
+	}
+
+	int getTotalRounds() {
+		int rounds = 0;
+		for (Stage stage : stages) {
+			rounds += stage.rounds;
+		}
+		return rounds;
+	}
+
+	/**
+	 * @return the most shoot targets any stage shows in one round
+	 */
+	int getMaxShootTargets() {
+		int shoots = 0;
+		for (Stage stage : stages) {
+			shoots = Math.max(shoots, stage.targets - stage.noShoots);
+		}
+		return shoots;
+	}
+
+	/**
+	 * @return the most no-shoot targets any stage shows in one round
+	 */
+	int getMaxNoShoots() {
+		int noShoots = 0;
+		for (Stage stage : stages) {
+			noShoots = Math.max(noShoots, stage.noShoots);
+		}
+		return noShoots;
+	}
+
+	/**
+	 * The settings of one stage.
+	 */
+	static final class Stage {
+		final String name;
+		final double parTime;
+		final int delayMin;
+		final int delayMax;
+		final int rounds;
+		final int targets;
+		final int noShoots;
+
+		private Stage(String name, double parTime, int delayMin, int delayMax, int rounds, int targets, int noShoots) {
+			this.name = name;
+			this.parTime = parTime;
+			this.delayMin = delayMin;
+			this.delayMax = delayMax;
+			this.rounds = rounds;
+			this.targets = targets;
+			this.noShoots = noShoots;
+		}
+	}
+}
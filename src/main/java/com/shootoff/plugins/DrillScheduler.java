@@ -0,0 +1,32 @@
+package com.shootoff.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time source and task scheduler the drill engine runs on. Deadlines are absolute times on the
+ * scheduler's own nanosecond clock, see {@link #now()}. Tasks with the same deadline run in the order
+ * they were scheduled, on the virtual clock of the simulator as in the exercise.
+ */
+interface DrillScheduler {
+	/**
+	 * A task scheduled for a deadline. Nothing waits for scheduled tasks, they can only be cancelled.
+	 */
+	interface ScheduledTask {
+		/**
+		 * Keeps the task from running if it has not started yet.
+		 *
+		 * @return false if the task already ran or started
+		 */
+		boolean cancel();
+	}
+
+	long now();
+
+	ScheduledTask scheduleAt(Runnable task, long deadline);
+
+	default ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+		return scheduleAt(task, now() + unit.toNanos(delay));
+	}
+
+	void execute(Runnable task);
+}
@@ -0,0 +1,224 @@
+package com.shootoff.plugins;
+
+import java.util.Arrays;
+
+/**
+ * Streaming statistics for the shots of a drill.
+ *
+ * Every recorded shot is folded into running totals in constant time and memory. Mean and variance of
+ * the shot times use Welford's method; the p50/p90/p99 shot times use the P-square estimator, which
+ * tracks a quantile with five markers instead of keeping the samples. Par misses are counted separately
+ * and do not contribute to the time percentiles since their time is always the par time.
+ */
+class DrillStatistics {
+	private int shots;
+	private int misses;
+	private int parMisses;
+	private int pointsTotal;
+	private int minPoints = Integer.MAX_VALUE;
+	private int maxPoints = Integer.MIN_VALUE;
+
+	private double timeTotal;
+	private double timeMean;
+	private double timeM2;
+	private float minTime = Float.MAX_VALUE;
+	private float maxTime = -Float.MAX_VALUE;
+
+	private final Quantile p50 = new Quantile(0.50);
+	private final Quantile p90 = new Quantile(0.90);
+	private final Quantile p99 = new Quantile(0.99);
+
+	synchronized void add(float time, int points, boolean hit, boolean missedPar) {
+		shots++;
+		if (missedPar) {
+			parMisses++;
+		} else if (!hit) {
+			misses++;
+		}
+
+		pointsTotal += points;
+		minPoints = Math.min(points, minPoints);
+		maxPoints = Math.max(points, maxPoints);
+
+		timeTotal += time;
+		final double delta = time - timeMean;
+		timeMean += delta / shots;
+		timeM2 += delta * (time - timeMean);
+		minTime = Math.min(time, minTime);
+		maxTime = Math.max(time, maxTime);
+
+		if (!missedPar) {
+			p50.add(time);
+			p90.add(time);
+			p99.add(time);
+		}
+	}
+
+	synchronized void clear() {
+		shots = 0;
+		misses = 0;
+		parMisses = 0;
+		pointsTotal = 0;
+		minPoints = Integer.MAX_VALUE;
+		maxPoints = Integer.MIN_VALUE;
+		timeTotal = 0;
+		timeMean = 0;
+		timeM2 = 0;
+		minTime = Float.MAX_VALUE;
+		maxTime = -Float.MAX_VALUE;
+		p50.clear();
+		p90.clear();
+		p99.clear();
+	}
+
+	synchronized Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Immutable copy of the statistics at one point in time.
+	 */
+	static class Snapshot {
+		final int shots;
+		final int misses;
+		final int parMisses;
+		final int pointsTotal;
+		final int minPoints;
+		final int maxPoints;
+		final double timeTotal;
+		final float minTime;
+		final float maxTime;
+		final double timeStdDev;
+		// Unlike the mean, extremes and deviation above, the percentiles leave the par misses out
+		final double timeP50;
+		final double timeP90;
+		final double timeP99;
+
+		private Snapshot(DrillStatistics stats) {
+			shots = stats.shots;
+			misses = stats.misses;
+			parMisses = stats.parMisses;
+			pointsTotal = stats.pointsTotal;
+			minPoints = shots == 0 ? 0 : stats.minPoints;
+			maxPoints = shots == 0 ? 0 : stats.maxPoints;
+			timeTotal = stats.timeTotal;
+			minTime = shots == 0 ? 0 : stats.minTime;
+			maxTime = shots == 0 ? 0 : stats.maxTime;
+			timeStdDev = shots < 2 ? 0 : Math.sqrt(stats.timeM2 / (shots - 1));
+			timeP50 = stats.p50.get();
+			timeP90 = stats.p90.get();
+			timeP99 = stats.p99.get();
+		}
+
+		float getAverageTime() {
+			return (float) (timeTotal / shots);
+		}
+
+		float getAveragePoints() {
+			return (float) pointsTotal / shots;
+		}
+	}
+
+	/**
+	 * P-square quantile estimator (Jain and Chlamtac, 1985). Exact for the first five samples.
+	 */
+	private static class Quantile {
+		private final double p;
+		private final double[] heights = new double[5];
+		private final double[] positions = new double[5];
+		private final double[] desired = new double[5];
+		private final double[] increments = new double[5];
+		private int count;
+
+		Quantile(double p) {
+			this.p = p;
+			clear();
+		}
+
+		void clear() {
+			count = 0;
+			for (int i = 0; i < 5; i++) {
+				positions[i] = i + 1;
+			}
+			desired[0] = 1;
+			desired[1] = 1 + 2 * p;
+			desired[2] = 1 + 4 * p;
+			desired[3] = 3 + 2 * p;
+			desired[4] = 5;
+			increments[0] = 0;
+			increments[1] = p / 2;
+			increments[2] = p;
+			increments[3] = (1 + p) / 2;
+			increments[4] = 1;
+		}
+
+		void add(double x) {
+			if (count < 5) {
+				heights[count++] = x;
+				if (count == 5) {
+					Arrays.sort(heights);
+				}
+				return;
+			}
+			count++;
+
+			final int k;
+			if (x < heights[0]) {
+				heights[0] = x;
+				k = 0;
+			} else if (x >= heights[4]) {
+				heights[4] = Math.max(heights[4], x);
+				k = 3;
+			} else {
+				int i = 1;
+				while (x >= heights[i]) {
+					i++;
+				}
+				k = i - 1;
+			}
+
+			for (int i = k + 1; i < 5; i++) {
+				positions[i]++;
+			}
+			for (int i = 0; i < 5; i++) {
+				desired[i] += increments[i];
+			}
+
+			for (int i = 1; i < 4; i++) {
+				final double d = desired[i] - positions[i];
+				if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+					final int sign = d > 0 ? 1 : -1;
+					final double candidate = parabolic(i, sign);
+					if (heights[i - 1] < candidate && candidate < heights[i + 1]) {
+						heights[i] = candidate;
+					} else {
+						heights[i] = linear(i, sign);
+					}
+					positions[i] += sign;
+				}
+			}
+		}
+
+		private double parabolic(int i, int d) {
+			return heights[i] + d / (positions[i + 1] - positions[i - 1])
+					* ((positions[i] - positions[i - 1] + d) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+					+ (positions[i + 1] - positions[i] - d) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+		}
+
+		private double linear(int i, int d) {
+			return heights[i] + d * (heights[i + d] - heights[i]) / (positions[i + d] - positions[i]);
+		}
+
+		double get() {
+			if (count == 0) {
+				return 0;
+			}
+			if (count < 5) {
+				final double[] sorted = Arrays.copyOf(heights, count);
+				Arrays.sort(sorted);
+				return sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(p * count) - 1))];
+			}
+			return heights[2];
+		}
+	}
+}
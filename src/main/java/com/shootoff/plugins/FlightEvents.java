@@ -0,0 +1,162 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Defines custom JDK Flight Recorder events at runtime.
+ *
+ * The plugin is built for Java 8, where {@code jdk.jfr} is only present on some runtimes, so the events
+ * are created through {@code jdk.jfr.EventFactory} looked up reflectively instead of as compiled event
+ * classes. On a runtime without JFR every event type is permanently disabled and committing is a field
+ * read. Events are only built while a recording has the type enabled.
+ */
+final class FlightEvents {
+	private static final Logger logger = LoggerFactory.getLogger(FlightEvents.class);
+
+	private static final String CATEGORY = "ShootOFF";
+
+	private static final Bridge BRIDGE = Bridge.load();
+
+	private FlightEvents() {}
+
+	/**
+	 * @param name the event name, e.g. {@code com.shootoff.RoundStart}
+	 * @param fields names of the event's fields; all fields are longs
+	 */
+	static EventType define(String name, String label, String... fields) {
+		if (BRIDGE == null) {
+			return new EventType(null, null);
+		}
+
+		try {
+			final Object factory = BRIDGE.createFactory(name, label, fields);
+			return new EventType(factory, BRIDGE.getEventType.invoke(factory));
+		} catch (Throwable t) {
+			logger.debug("Could not define flight recorder event {}", name, t);
+			return new EventType(null, null);
+		}
+	}
+
+	static final class EventType {
+		private final Object factory;
+		private final Object type;
+
+		private EventType(Object factory, Object type) {
+			this.factory = factory;
+			this.type = type;
+		}
+
+		/**
+		 * @return true if a running recording collects this event; check before computing field values
+		 */
+		boolean isEnabled() {
+			if (factory == null) {
+				return false;
+			}
+			try {
+				return (boolean) BRIDGE.isEnabled.invoke(type);
+			} catch (Throwable t) {
+				return false;
+			}
+		}
+
+		/**
+		 * Commits one event with the given field values in definition order. Does nothing unless a
+		 * recording has the event enabled; callers on hot paths check {@link #isEnabled()} first to avoid
+		 * the varargs array.
+		 */
+		void commit(long... values) {
+			if (!isEnabled()) {
+				return;
+			}
+
+			try {
+				final Object event = BRIDGE.newEvent.invoke(factory);
+				for (int i = 0; i < values.length; i++) {
+					BRIDGE.set.invoke(event, i, (Object) values[i]);
+				}
+				BRIDGE.commit.invoke(event);
+			} catch (Throwable t) {
+				logger.trace("Could not commit flight recorder event", t);
+			}
+		}
+	}
+
+	private static final class Bridge {
+		private final MethodHandle create;
+		private final Constructor<?> annotationElement;
+		private final Constructor<?> valueDescriptor;
+		private final Class<? extends Annotation> nameAnnotation;
+		private final Class<? extends Annotation> labelAnnotation;
+		private final Class<? extends Annotation> categoryAnnotation;
+		private final Class<? extends Annotation> stackTraceAnnotation;
+		private final MethodHandle newEvent;
+		private final MethodHandle getEventType;
+		private final MethodHandle isEnabled;
+		private final MethodHandle set;
+		private final MethodHandle commit;
+
+		@SuppressWarnings("unchecked")
+		private Bridge() throws ReflectiveOperationException {
+			final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			final Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+			final Class<?> event = Class.forName("jdk.jfr.Event");
+			final Class<?> eventType = Class.forName("jdk.jfr.EventType");
+			final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+			final Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+
+			create = lookup.findStatic(factory, "create", MethodType.methodType(factory, List.class, List.class));
+			annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+			valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class);
+			nameAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.Name");
+			labelAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.Label");
+			categoryAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.Category");
+			stackTraceAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.StackTrace");
+
+			newEvent = lookup.findVirtual(factory, "newEvent", MethodType.methodType(event))
+					.asType(MethodType.methodType(Object.class, Object.class));
+			getEventType = lookup.findVirtual(factory, "getEventType", MethodType.methodType(eventType))
+					.asType(MethodType.methodType(Object.class, Object.class));
+			isEnabled = lookup.findVirtual(eventType, "isEnabled", MethodType.methodType(boolean.class))
+					.asType(MethodType.methodType(boolean.class, Object.class));
+			set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+					.asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+			commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+		}
+
+		private static Bridge load() {
+			try {
+				return new Bridge();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				logger.debug("Flight recorder API not available, drill events disabled");
+				return null;
+			}
+		}
+
+		private Object createFactory(String name, String label, String[] fields) throws Throwable {
+			final List<Object> annotations = Arrays.asList(annotationElement.newInstance(nameAnnotation, name),
+					annotationElement.newInstance(labelAnnotation, label),
+					annotationElement.newInstance(categoryAnnotation, new String[] { CATEGORY }),
+					// The call site is always the same, a stack trace per event would only add overhead
+					annotationElement.newInstance(stackTraceAnnotation, false));
+
+			final List<Object> descriptors = new ArrayList<>(fields.length);
+			for (String field : fields) {
+				descriptors.add(valueDescriptor.newInstance(long.class, field));
+			}
+
+			return create.invoke(annotations, descriptors);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.shootoff.plugins;
+
+import java.util.Locale;
+
+/**
+ * Streaming geometry of a drill's shot group.
+ *
+ * Shots are given relative to the center of the target they hit, in the target file's units, so groups
+ * shot on differently sized or placed targets are comparable. Every shot updates running sums in
+ * constant time, from which the group center, its bias from the target center, the radial standard
+ * deviation around the group center and the mean radius from the target center follow directly, along
+ * with a histogram of the shots by ring points.
+ *
+ * The extreme spread is taken from the outermost shot in each of eight directions 45 degrees apart.
+ * The widest pair among those shots is never wider than the true spread and at least cos(22.5 degrees),
+ * about 92%, of it, which keeps the update constant time instead of comparing every pair of shots.
+ */
+class GroupStatistics {
+	static final int MAX_RING_POINTS = 10;
+
+	private static final int DIRECTIONS = 8;
+	private static final double[] DIRECTION_X = new double[DIRECTIONS];
+	private static final double[] DIRECTION_Y = new double[DIRECTIONS];
+
+	static {
+		for (int d = 0; d < DIRECTIONS; d++) {
+			DIRECTION_X[d] = Math.cos(d * Math.PI / 4);
+			DIRECTION_Y[d] = Math.sin(d * Math.PI / 4);
+		}
+	}
+
+	private int shots;
+	private double sumX;
+	private double sumY;
+	private double sumSquares;
+	private double sumRadius;
+	private final double[] extremeX = new double[DIRECTIONS];
+	private final double[] extremeY = new double[DIRECTIONS];
+	private final double[] extremeProjection = new double[DIRECTIONS];
+	private final int[] ringHits = new int[MAX_RING_POINTS + 1];
+
+	/**
+	 * @param x the horizontal offset of the shot from the target center, positive to the right
+	 * @param y the vertical offset, positive downwards
+	 * @param points the ring points the shot scored
+	 */
+	synchronized void add(double x, double y, int points) {
+		if (shots == 0) {
+			for (int d = 0; d < DIRECTIONS; d++) {
+				extremeProjection[d] = -Double.MAX_VALUE;
+			}
+		}
+
+		shots++;
+		sumX += x;
+		sumY += y;
+		sumSquares += x * x + y * y;
+		sumRadius += Math.sqrt(x * x + y * y);
+		for (int d = 0; d < DIRECTIONS; d++) {
+			final double projection = x * DIRECTION_X[d] + y * DIRECTION_Y[d];
+			if (projection > extremeProjection[d]) {
+				extremeProjection[d] = projection;
+				extremeX[d] = x;
+				extremeY[d] = y;
+			}
+		}
+		ringHits[Math.max(0, Math.min(MAX_RING_POINTS, points))]++;
+	}
+
+	synchronized void clear() {
+		shots = 0;
+		sumX = 0;
+		sumY = 0;
+		sumSquares = 0;
+		sumRadius = 0;
+		for (int i = 0; i < ringHits.length; i++) {
+			ringHits[i] = 0;
+		}
+	}
+
+	synchronized Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Immutable copy of the group geometry at one point in time. Lengths are in target units.
+	 */
+	static class Snapshot {
+		final int shots;
+		final double centerX;
+		final double centerY;
+		final double extremeSpread;
+		final double meanRadius;
+		final double radialStdDev;
+		private final int[] ringHits;
+
+		private Snapshot(GroupStatistics stats) {
+			shots = stats.shots;
+			centerX = shots == 0 ? 0 : stats.sumX / shots;
+			centerY = shots == 0 ? 0 : stats.sumY / shots;
+			meanRadius = shots == 0 ? 0 : stats.sumRadius / shots;
+			radialStdDev = shots == 0 ? 0
+					: Math.sqrt(Math.max(0, stats.sumSquares / shots - centerX * centerX - centerY * centerY));
+
+			double spread = 0;
+			for (int a = 0; a < DIRECTIONS && shots > 1; a++) {
+				for (int b = a + 1; b < DIRECTIONS; b++) {
+					spread = Math.max(spread, Math.hypot(stats.extremeX[a] - stats.extremeX[b],
+							stats.extremeY[a] - stats.extremeY[b]));
+				}
+			}
+			extremeSpread = spread;
+			ringHits = stats.ringHits.clone();
+		}
+
+		/**
+		 * @return the group's offset from the target center in words, such as {@code 12.0 right, 3.5 low}
+		 */
+		String formatBias() {
+			return String.format("%.1f %s, %.1f %s", Math.abs(centerX), centerX < 0 ? "left" : "right",
+					Math.abs(centerY), centerY < 0 ? "high" : "low");
+		}
+
+		String format() {
+			final StringBuilder rings = new StringBuilder();
+			for (int points = MAX_RING_POINTS; points >= 0; points--) {
+				if (ringHits[points] > 0) {
+					rings.append(String.format(" %d:%d", points, ringHits[points]));
+				}
+			}
+			return String.format("Group: %d shots\n  Extreme spread: %.1f\n  Mean radius: %.1f\n  Radial SD: %.1f\n  Bias: %s\n  Rings:%s",
+					shots, extremeSpread, meanRadius, radialStdDev, formatBias(), rings);
+		}
+
+		static String csvHeader() {
+			final StringBuilder header = new StringBuilder(
+					"shots,centerX,centerY,extremeSpread,meanRadius,radialStdDev");
+			for (int points = 0; points <= MAX_RING_POINTS; points++) {
+				header.append(",ring").append(points);
+			}
+			return header.toString();
+		}
+
+		String toCsv() {
+			final StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%d,%.3f,%.3f,%.3f,%.3f,%.3f", shots,
+					centerX, centerY, extremeSpread, meanRadius, radialStdDev));
+			for (int hits : ringHits) {
+				row.append(',').append(hits);
+			}
+			return row.toString();
+		}
+	}
+}
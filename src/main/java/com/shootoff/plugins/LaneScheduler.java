@@ -0,0 +1,106 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scheduler of one drill lane on top of the scheduler shared by all lanes.
+ *
+ * All of the lane's work runs through a strand on the shared scheduler's workers: the lane's tasks run
+ * one at a time in submission order, and at most {@value #DRAIN_BUDGET} of them before the strand
+ * yields its worker. Timed tasks are only handed to the strand by the shared wheel thread when their
+ * deadline is reached, so the lane's round starts, beeps, target placements, buzzers and results never
+ * run on the wheel thread and never hold up another lane's deadline. With a worker for every lane, a
+ * lane flooded with shots holds only its own worker and cannot delay another lane's beep or buzzer.
+ */
+final class LaneScheduler implements DrillScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(LaneScheduler.class);
+
+	private static final int DRAIN_BUDGET = 16;
+
+	private final DrillScheduler shared;
+	private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+	private final Runnable drain = this::drain;
+
+	LaneScheduler(DrillScheduler shared) {
+		this.shared = shared;
+	}
+
+	@Override
+	public long now() {
+		return shared.now();
+	}
+
+	@Override
+	public ScheduledTask scheduleAt(Runnable task, long deadline) {
+		final LaneTask scheduled = new LaneTask(task);
+		scheduled.timer = shared.scheduleAt(() -> execute(scheduled), deadline);
+		return scheduled;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		queue.add(task);
+		if (draining.compareAndSet(false, true)) {
+			shared.execute(drain);
+		}
+	}
+
+	private void drain() {
+		for (int i = 0; i < DRAIN_BUDGET; i++) {
+			final Runnable task = queue.poll();
+			if (task == null) {
+				break;
+			}
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("Lane task failed", e);
+			}
+		}
+
+		draining.set(false);
+		// Work queued after the last poll, or left over from the budget, needs a new drain
+		if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+			shared.execute(drain);
+		}
+	}
+
+	/**
+	 * A timed task of the lane. It can be cancelled until it starts on the strand, also after the wheel
+	 * handed it over.
+	 */
+	private static final class LaneTask implements Runnable, ScheduledTask {
+		private final Runnable task;
+		// Set once the task started or was cancelled
+		private final AtomicBoolean done = new AtomicBoolean(false);
+		private volatile ScheduledTask timer;
+
+		private LaneTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			if (done.compareAndSet(false, true)) {
+				task.run();
+			}
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!done.compareAndSet(false, true)) {
+				return false;
+			}
+			final ScheduledTask scheduled = timer;
+			if (scheduled != null) {
+				scheduled.cancel();
+			}
+			return true;
+		}
+	}
+}
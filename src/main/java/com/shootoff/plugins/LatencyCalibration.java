@@ -0,0 +1,86 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.prefs.Preferences;
+
+/**
+ * Measures and stores how long it takes for a sound cue to reach the speaker. The value is kept in the
+ * user preferences so it survives restarts and is used by {@link ShotClock} to correct the beep onset.
+ * Shot times run from the beep, so when the target appears on the projector does not enter them.
+ */
+class LatencyCalibration {
+	private static final Logger logger = LoggerFactory.getLogger(LatencyCalibration.class);
+
+	private static final String PREFS_NODE = "latency";
+	private static final String AUDIO_LATENCY_KEY = "audioLatencyNanos";
+
+	private static final int AUDIO_SAMPLES = 5;
+	private static final long AUDIO_SAMPLE_INTERVAL = 300; // ms
+
+	private final Preferences preferences;
+
+	private volatile long audioLatency;
+
+	private LatencyCalibration(Preferences preferences) {
+		this.preferences = preferences;
+		this.audioLatency = preferences.getLong(AUDIO_LATENCY_KEY, 0);
+	}
+
+	static LatencyCalibration load() {
+		return new LatencyCalibration(Preferences.userNodeForPackage(LatencyCalibration.class).node(PREFS_NODE));
+	}
+
+	long getAudioLatency() {
+		return audioLatency;
+	}
+
+	/**
+	 * Runs the audio calibration on the calling thread and stores the value. Blocks for a few seconds.
+	 *
+	 * @param cues the cache holding the cue to calibrate against
+	 * @param cue the cue to calibrate against, normally the start beep
+	 */
+	void calibrate(AudioCueCache cues, String cue) {
+		final long measured = measureAudioLatency(cues, cue);
+		if (measured < 0) {
+			logger.warn("Audio latency calibration failed, keeping {} us", audioLatency / 1000);
+			return;
+		}
+
+		audioLatency = measured;
+		preferences.putLong(AUDIO_LATENCY_KEY, audioLatency);
+		logger.info("Calibrated audio latency: {} us", audioLatency / 1000);
+	}
+
+	/**
+	 * Plays the cue several times through the same preloaded line the drill uses and measures the time
+	 * from issuing it until the line reports that frames are being rendered.
+	 */
+	private static long measureAudioLatency(AudioCueCache cues, String cue) {
+		final long[] samples = new long[AUDIO_SAMPLES];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = cues.measureOutputLatency(cue);
+			if (samples[i] < 0) {
+				return -1;
+			}
+
+			try {
+				Thread.sleep(AUDIO_SAMPLE_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+		}
+
+		return median(samples);
+	}
+
+	private static long median(long[] samples) {
+		final long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
@@ -0,0 +1,116 @@
+package com.shootoff.plugins;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of nanosecond durations with log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so any recorded value is reported within 12.5% of its true value
+ * from one nanosecond up to several minutes. Recording is a single atomic increment and allocates
+ * nothing, so it is safe on the shot path.
+ */
+class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAGNITUDES = 40;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+	private final AtomicLongArray totals = new AtomicLongArray(3); // count, sum, max
+
+	LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	void record(long nanos) {
+		final long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		totals.incrementAndGet(0);
+		totals.addAndGet(1, value);
+
+		long max;
+		do {
+			max = totals.get(2);
+		} while (value > max && !totals.compareAndSet(2, max, value));
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		final int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+		final int subBucket = (int) (value >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+		return Math.min(magnitude * SUB_BUCKETS + subBucket, MAGNITUDES * SUB_BUCKETS - 1);
+	}
+
+	/**
+	 * @return the smallest value that falls into the bucket
+	 */
+	private static long lowerBound(int bucket) {
+		final int magnitude = bucket / SUB_BUCKETS;
+		final int subBucket = bucket % SUB_BUCKETS;
+		if (magnitude == 0) {
+			return subBucket;
+		}
+		return (long) (SUB_BUCKETS + subBucket) << (magnitude - 1);
+	}
+
+	long getCount() {
+		return totals.get(0);
+	}
+
+	long getMax() {
+		return totals.get(2);
+	}
+
+	double getMean() {
+		final long count = totals.get(0);
+		return count == 0 ? 0 : totals.get(1) / (double) count;
+	}
+
+	/**
+	 * @return the value at the given quantile, rounded down to its bucket, or 0 if nothing was recorded
+	 */
+	long quantile(double quantile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return lowerBound(i);
+			}
+		}
+		return getMax();
+	}
+
+	void clear() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		for (int i = 0; i < totals.length(); i++) {
+			totals.set(i, 0);
+		}
+	}
+
+	/**
+	 * @return count, mean, p50, p99 and max in milliseconds
+	 */
+	String summary() {
+		final double millis = TimeUnit.MILLISECONDS.toNanos(1);
+		return String.format("%s: n=%d mean=%.2f p50=%.2f p99=%.2f max=%.2f ms", name, getCount(), getMean() / millis,
+				quantile(0.5) / millis, quantile(0.99) / millis, getMax() / millis);
+	}
+}
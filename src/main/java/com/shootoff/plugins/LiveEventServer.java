@@ -0,0 +1,411 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the drill's events to scoreboards and other external clients as server-sent events: a client
+ * sends {@code GET /events} and gets one {@code data:} line of JSON per event, which a browser reads with
+ * {@code new EventSource("http://host:port/events")}.
+ *
+ * One thread runs all connections on a selector. {@link #publish(String)} encodes the event once and
+ * offers it to a bounded queue per client, so publishing never blocks and never does I/O. A client whose
+ * queue overflows because it stopped reading is disconnected; it can reconnect and continues with the
+ * next event. Idle connections get a comment line every {@code KEEP_ALIVE} so dead ones are noticed, and
+ * a connection that has not sent its complete request within {@code REQUEST_TIMEOUT} is dropped, so
+ * idle sockets cannot take up all the client slots.
+ */
+class LiveEventServer implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(LiveEventServer.class);
+
+	static final String PATH = "/events";
+
+	private static final int CLIENT_QUEUE = 256;
+	private static final int MAX_CLIENTS = 16;
+	private static final int MAX_REQUEST = 4096;
+	private static final int READ_BUFFER = 1024;
+	private static final long KEEP_ALIVE = TimeUnit.SECONDS.toMillis(15);
+	private static final long REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+	private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+
+	private static final byte[] EVENT_STREAM = ("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n"
+			+ "Cache-Control: no-cache\r\nConnection: keep-alive\r\nAccess-Control-Allow-Origin: *\r\n\r\n")
+					.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NOT_FOUND = "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] KEEP_ALIVE_COMMENT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread thread;
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER);
+	private volatile boolean running = true;
+	// Set while a wakeup is on its way, so a burst of events wakes the selector only once
+	private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+	private long lastKeepAlive = System.currentTimeMillis();
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong droppedClients = new AtomicLong();
+
+	private LiveEventServer(Selector selector, ServerSocketChannel server, ThreadFactory threadFactory) {
+		this.selector = selector;
+		this.server = server;
+		thread = threadFactory.newThread(this::run);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Binds the server and starts its thread.
+	 *
+	 * @param address the address to listen on, port 0 picks a free port
+	 */
+	static LiveEventServer open(InetSocketAddress address, ThreadFactory threadFactory) throws IOException {
+		final Selector selector = Selector.open();
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		try {
+			server.configureBlocking(false);
+			server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			server.bind(address);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+
+		final LiveEventServer liveEventServer = new LiveEventServer(selector, server, threadFactory);
+		liveEventServer.thread.start();
+		return liveEventServer;
+	}
+
+	int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Queues an event for every connected client. Safe to call from any thread; never blocks.
+	 *
+	 * @param json the event, a JSON object on one line
+	 */
+	void publish(String json) {
+		if (!running || clients.isEmpty()) {
+			return;
+		}
+
+		final byte[] event = ("data: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+		for (Client client : clients) {
+			if (client.streaming && !client.queue.offer(event)) {
+				client.overflowed = true;
+			}
+		}
+		published.incrementAndGet();
+		if (wakeupPending.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+	}
+
+	int getClients() {
+		return clients.size();
+	}
+
+	long getDroppedClients() {
+		return droppedClients.get();
+	}
+
+	String summary() {
+		return String.format("Live events: port %d, %d clients, %d events, %d clients dropped", getPort(), getClients(),
+				published.get(), getDroppedClients());
+	}
+
+	/**
+	 * Stops the server and waits briefly for its thread to release the port, so a server opened right
+	 * after can bind it again.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive()) {
+			logger.warn("Live event server did not stop within {} ms", CLOSE_TIMEOUT);
+		}
+	}
+
+	private void run() {
+		try {
+			while (running) {
+				selector.select(selectTimeout());
+				// Events published from here on need a new wakeup, the ones before are flushed below
+				wakeupPending.set(false);
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						final Client client = (Client) key.attachment();
+						if (key.isReadable()) {
+							read(client);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(client);
+						}
+					}
+				}
+				flushAll();
+			}
+		} catch (IOException e) {
+			logger.error("Live event server failed, events are no longer published", e);
+		} finally {
+			shutDown();
+		}
+	}
+
+	/**
+	 * @return how long the selector may wait for the next keep-alive or request deadline, in milliseconds
+	 */
+	private long selectTimeout() {
+		final long now = System.currentTimeMillis();
+		long wakeAt = lastKeepAlive + KEEP_ALIVE;
+		for (Client client : clients) {
+			if (client.request != null) {
+				wakeAt = Math.min(wakeAt, client.connectedAt + REQUEST_TIMEOUT);
+			}
+		}
+		// 0 would mean no timeout at all
+		return Math.max(1, wakeAt - now);
+	}
+
+	/**
+	 * Accepts a connection. A connection that fails while it is accepted is logged and closed; the
+	 * server goes on with the others.
+	 */
+	private void accept() {
+		final SocketChannel channel;
+		try {
+			channel = server.accept();
+		} catch (IOException e) {
+			logger.warn("Could not accept a live event client", e);
+			return;
+		}
+		if (channel == null) {
+			return;
+		}
+
+		try {
+			if (clients.size() >= MAX_CLIENTS) {
+				logger.warn("Refusing live event client {}, {} clients connected", channel.getRemoteAddress(), MAX_CLIENTS);
+				channel.close();
+				return;
+			}
+
+			channel.configureBlocking(false);
+			final Client client = new Client(channel);
+			client.key = channel.register(selector, SelectionKey.OP_READ, client);
+			clients.add(client);
+		} catch (IOException e) {
+			logger.warn("Could not accept a live event client", e);
+			try {
+				channel.close();
+			} catch (IOException closeFailed) {
+				logger.debug("Could not close a live event client", closeFailed);
+			}
+		}
+	}
+
+	/**
+	 * Reads the client's request until its headers are complete, then starts its stream. Anything a
+	 * streaming client sends is ignored.
+	 */
+	private void read(Client client) {
+		final int read;
+		readBuffer.clear();
+		try {
+			read = client.channel.read(readBuffer);
+		} catch (IOException e) {
+			drop(client, null);
+			return;
+		}
+		if (read < 0) {
+			drop(client, null);
+			return;
+		}
+		if (client.streaming || client.request == null) {
+			return;
+		}
+
+		readBuffer.flip();
+		if (readBuffer.remaining() > client.request.remaining()) {
+			drop(client, "sent an oversized request");
+			return;
+		}
+		client.request.put(readBuffer);
+
+		final String request = new String(client.request.array(), 0, client.request.position(),
+				StandardCharsets.US_ASCII);
+		if (!request.contains("\r\n\r\n")) {
+			return;
+		}
+
+		client.request = null;
+		final String[] requestLine = request.substring(0, request.indexOf("\r\n")).split(" ");
+		final boolean events = requestLine.length >= 2 && "GET".equals(requestLine[0])
+				&& (requestLine[1].equals(PATH) || requestLine[1].startsWith(PATH + "?"));
+		if (events) {
+			client.queue.offer(EVENT_STREAM);
+			client.streaming = true;
+		} else {
+			client.queue.offer(NOT_FOUND);
+			client.closeWhenFlushed = true;
+		}
+	}
+
+	/**
+	 * Drops the clients that fell behind or did not complete their request in time, adds the keep-alive
+	 * comment when it is due and writes what is queued.
+	 */
+	private void flushAll() {
+		final long now = System.currentTimeMillis();
+		final boolean keepAlive = now - lastKeepAlive >= KEEP_ALIVE;
+		if (keepAlive) {
+			lastKeepAlive = now;
+		}
+
+		for (Client client : clients) {
+			if (client.overflowed) {
+				drop(client, "fell behind");
+				continue;
+			}
+			if (client.request != null && now - client.connectedAt >= REQUEST_TIMEOUT) {
+				drop(client, "did not complete its request");
+				continue;
+			}
+			if (keepAlive && client.streaming && client.pending == null && client.queue.isEmpty()) {
+				client.queue.offer(KEEP_ALIVE_COMMENT);
+			}
+			write(client);
+		}
+	}
+
+	/**
+	 * Writes until the client's queue is empty or its socket buffer is full; in that case the rest is
+	 * written once the selector reports the socket writable again.
+	 */
+	private void write(Client client) {
+		if (!client.key.isValid()) {
+			return;
+		}
+
+		try {
+			while (true) {
+				if (client.pending == null || !client.pending.hasRemaining()) {
+					final byte[] next = client.queue.poll();
+					if (next == null) {
+						client.pending = null;
+						break;
+					}
+					client.pending = ByteBuffer.wrap(next);
+				}
+
+				client.channel.write(client.pending);
+				if (client.pending.hasRemaining()) {
+					client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		} catch (IOException e) {
+			drop(client, null);
+			return;
+		}
+
+		if (client.closeWhenFlushed) {
+			drop(client, null);
+		} else {
+			client.key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * @param reason why the client is disconnected, or null if it went away by itself
+	 */
+	private void drop(Client client, String reason) {
+		if (!clients.remove(client)) {
+			return;
+		}
+
+		if (reason != null) {
+			droppedClients.incrementAndGet();
+			logger.warn("Disconnected live event client {}: {}", client.address, reason);
+		}
+		client.key.cancel();
+		try {
+			client.channel.close();
+		} catch (IOException e) {
+			logger.debug("Could not close live event client {}", client.address, e);
+		}
+	}
+
+	private void shutDown() {
+		for (Client client : clients) {
+			drop(client, null);
+		}
+		try {
+			server.close();
+			selector.close();
+		} catch (IOException e) {
+			logger.warn("Could not close the live event server", e);
+		}
+	}
+
+	private static final class Client {
+		private final SocketChannel channel;
+		private final String address;
+		private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE);
+		private final long connectedAt = System.currentTimeMillis();
+		private SelectionKey key;
+		// Until the request headers are complete
+		private ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+		private ByteBuffer pending;
+		private volatile boolean streaming = false;
+		private volatile boolean overflowed = false;
+		private boolean closeWhenFlushed = false;
+
+		private Client(SocketChannel channel) {
+			this.channel = channel;
+			String address;
+			try {
+				address = String.valueOf(channel.getRemoteAddress());
+			} catch (IOException e) {
+				address = "unknown";
+			}
+			this.address = address;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.shootoff.plugins;
+
+import java.util.Locale;
+
+/**
+ * The JSON objects the exercise publishes on its {@link LiveEventServer}. Every event has a
+ * {@code type}; times are in seconds and shot positions in arena pixels from the center of the target
+ * the shot was attributed to, positive to the right and downwards.
+ */
+final class LiveEvents {
+	private LiveEvents() {
+	}
+
+	/**
+	 * @param stage the running stage of a drill program starting at 1, or 0 without a program
+	 */
+	static String round(int round, int rounds, double parTime, int stage, int stages) {
+		return String.format(Locale.ROOT, "{\"type\":\"round\",\"round\":%d,\"rounds\":%d,\"par\":%.3f,\"stage\":%d,\"stages\":%d}",
+				round, rounds, parTime, stage, stages);
+	}
+
+	static String shot(int round, float time, int points, boolean hit, boolean noShoot, double x, double y) {
+		return String.format(Locale.ROOT,
+				"{\"type\":\"shot\",\"round\":%d,\"time\":%.3f,\"points\":%d,\"hit\":%b,\"noShoot\":%b,\"x\":%.1f,\"y\":%.1f}",
+				round, time, points, hit, noShoot, x, y);
+	}
+
+	static String score(int score) {
+		return String.format(Locale.ROOT, "{\"type\":\"score\",\"score\":%d}", score);
+	}
+
+	static String parMiss(int round, double parTime) {
+		return String.format(Locale.ROOT, "{\"type\":\"parMiss\",\"round\":%d,\"par\":%.3f}", round, parTime);
+	}
+
+	/**
+	 * @param stage the completed stage of the drill program, starting at 1
+	 */
+	static String stage(int stage, DrillStatistics.Snapshot stats) {
+		return String.format(Locale.ROOT,
+				"{\"type\":\"stage\",\"stage\":%d,\"shots\":%d,\"points\":%d,\"averageTime\":%.3f,\"misses\":%d,\"parMisses\":%d}",
+				stage, stats.shots, stats.pointsTotal, stats.shots > 0 ? stats.getAverageTime() : 0f, stats.misses,
+				stats.parMisses);
+	}
+
+	/**
+	 * The average time includes the par misses, {@code p50} and {@code p90} leave them out.
+	 */
+	static String results(DrillStatistics.Snapshot stats, int noShootHits, long seed) {
+		return String.format(Locale.ROOT,
+				"{\"type\":\"results\",\"shots\":%d,\"points\":%d,\"time\":%.3f,\"averageTime\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"misses\":%d,\"parMisses\":%d,\"noShootHits\":%d,\"seed\":%d}",
+				stats.shots, stats.pointsTotal, stats.timeTotal, stats.shots > 0 ? stats.getAverageTime() : 0f,
+				stats.timeP50, stats.timeP90, stats.misses, stats.parMisses, noShootHits, seed);
+	}
+}
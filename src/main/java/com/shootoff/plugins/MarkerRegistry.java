@@ -0,0 +1,136 @@
+package com.shootoff.plugins;
+
+import javafx.scene.shape.Ellipse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps every slot of the {@link ShotStore} directly to the marker drawn for that shot, so markers never
+ * have to be looked up in the canvas group.
+ *
+ * Visibility changes are queued and applied together on the FX thread by {@link #apply()},
+ * which the {@link UiUpdateBus} runs at most once per pulse. Queuing a change for one shot is constant
+ * time; hiding or showing every marker is a single pending flag that is resolved in one pass when the
+ * batch is applied. Changes queued for markers that are forgotten before the batch is applied, such as
+ * hiding every marker right before a reset clears the registry, still reach those markers.
+ */
+class MarkerRegistry {
+	private static final byte NONE = 0;
+	private static final byte SHOW = 1;
+	private static final byte HIDE = 2;
+
+	private final Ellipse[] markers;
+	private final byte[] pendingVisibility;
+	private final int[] dirtySlots;
+	private final boolean[] dirty;
+	private int dirtyCount = 0;
+	private byte pendingAll = NONE;
+	// Markers forgotten by clear() with the visibility last queued for them
+	private final List<Ellipse> retiredShown = new ArrayList<>();
+	private final List<Ellipse> retiredHidden = new ArrayList<>();
+
+	MarkerRegistry(int capacity) {
+		markers = new Ellipse[capacity];
+		pendingVisibility = new byte[capacity];
+		dirtySlots = new int[capacity];
+		dirty = new boolean[capacity];
+	}
+
+	/**
+	 * Associates a marker with a store slot and queues it to be shown. A marker previously held by the
+	 * slot is released.
+	 */
+	synchronized void register(int slot, Ellipse marker) {
+		markers[slot] = marker;
+		pendingVisibility[slot] = SHOW;
+		markDirty(slot);
+	}
+
+	synchronized void setVisible(int slot, boolean visible) {
+		pendingVisibility[slot] = visible ? SHOW : HIDE;
+		markDirty(slot);
+	}
+
+	/**
+	 * Queues a visibility change for every registered marker. Individual changes queued before this call
+	 * are superseded.
+	 */
+	synchronized void setAllVisible(boolean visible) {
+		for (int i = 0; i < dirtyCount; i++) {
+			pendingVisibility[dirtySlots[i]] = NONE;
+		}
+		pendingAll = visible ? SHOW : HIDE;
+	}
+
+	/**
+	 * Forgets every marker. Changes already queued for them are applied with the next batch.
+	 */
+	synchronized void clear() {
+		for (int slot = 0; slot < markers.length; slot++) {
+			final Ellipse marker = markers[slot];
+			if (marker == null) {
+				continue;
+			}
+			// A change for one marker is queued after any change for all of them
+			final byte pending = dirty[slot] && pendingVisibility[slot] != NONE ? pendingVisibility[slot] : pendingAll;
+			if (pending == SHOW) {
+				retiredShown.add(marker);
+			} else if (pending == HIDE) {
+				retiredHidden.add(marker);
+			}
+		}
+
+		Arrays.fill(markers, null);
+		for (int i = 0; i < dirtyCount; i++) {
+			pendingVisibility[dirtySlots[i]] = NONE;
+			dirty[dirtySlots[i]] = false;
+		}
+		dirtyCount = 0;
+		pendingAll = NONE;
+	}
+
+	private void markDirty(int slot) {
+		if (!dirty[slot]) {
+			dirty[slot] = true;
+			dirtySlots[dirtyCount++] = slot;
+		}
+	}
+
+	/**
+	 * Applies the queued changes. Must be called on the FX thread.
+	 */
+	synchronized void apply() {
+		for (Ellipse marker : retiredShown) {
+			marker.setVisible(true);
+		}
+		retiredShown.clear();
+		for (Ellipse marker : retiredHidden) {
+			marker.setVisible(false);
+		}
+		retiredHidden.clear();
+
+		if (pendingAll != NONE) {
+			final boolean visible = pendingAll == SHOW;
+			for (Ellipse marker : markers) {
+				if (marker != null) {
+					marker.setVisible(visible);
+				}
+			}
+			pendingAll = NONE;
+		}
+
+		for (int i = 0; i < dirtyCount; i++) {
+			final int slot = dirtySlots[i];
+			final Ellipse marker = markers[slot];
+			if (marker != null && pendingVisibility[slot] != NONE) {
+				marker.setVisible(pendingVisibility[slot] == SHOW);
+			}
+
+			pendingVisibility[slot] = NONE;
+			dirty[slot] = false;
+		}
+		dirtyCount = 0;
+	}
+}
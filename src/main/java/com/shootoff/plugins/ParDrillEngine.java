@@ -0,0 +1,607 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Round lifecycle of the par drill: make ready, random delay, beep, par window, close on the first shot
+ * or on par expiry, and the results once the round limit is reached.
+ *
+ * The engine owns the drill state and the timing; everything visible or audible goes through the
+ * {@link DrillHost}. All times are on the clock of the {@link DrillScheduler} it runs on, so the same
+ * drill runs against the arena in real time or headless on a virtual clock. Placements and delays come
+ * from a {@link DrillPlan} generated when the drill starts, so nothing is computed between the round's
+ * deadline and its beep.
+ *
+ * The scheduler, the shot delivering thread and the UI all look at the round concurrently. Its state
+ * lives in one immutable {@link RoundWindow} that is replaced with a compare-and-set on every
+ * transition, so no thread ever sees half of a transition and the shot path takes no lock. A shot
+ * belongs to a round if its capture time falls in the round's window, from the beep onset to the
+ * close; where it is delivered relative to the buzzer does not matter.
+ *
+ * Every scheduled task carries the window it was scheduled from and only acts if the drill is still in
+ * that round and state. Starting the drill and resetting it begin a new epoch, so a task left over from
+ * before, or a pause and resume while a round is pending, never runs a second round next to the first.
+ */
+class ParDrillEngine {
+	private static final Logger logger = LoggerFactory.getLogger(ParDrillEngine.class);
+
+	static final double DEFAULT_PAR_TIME = 4.0;
+	static final int DEFAULT_MIN_DELAY = 5;
+	static final int DEFAULT_MAX_DELAY = 8;
+	static final int DEFAULT_MAX_ROUNDS = 10;
+
+	private static final long SHOOT_TO_RESET_DELAY = TimeUnit.SECONDS.toNanos(4);
+	private static final long COMPLETE_HIDE_DELAY = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final long RESULTS_DELAY = TimeUnit.SECONDS.toNanos(1);
+	// Between a stage's results and the make ready of the next stage of a program
+	private static final long STAGE_BREAK = TimeUnit.SECONDS.toNanos(3);
+	// How long a shot captured before the par expired may take to be delivered
+	static final long SHOT_DELIVERY_GRACE = TimeUnit.MILLISECONDS.toNanos(150);
+
+	/**
+	 * Round states. A drill goes IDLE, then ARMED, LIVE and CLOSED for every round, and ends in RESULTS.
+	 */
+	enum RoundState {
+		/** No round scheduled: before the drill started or while paused. */
+		IDLE,
+		/** The next round is scheduled and waits for its beep. */
+		ARMED,
+		/** The beep sounded and the par time runs. */
+		LIVE,
+		/** The round ended on a shot or on par expiry. */
+		CLOSED,
+		/** The last round closed and the results are shown. */
+		RESULTS
+	}
+
+	private final DrillHost host;
+	private final DrillMetrics metrics;
+	private final DrillScheduler scheduler;
+	private volatile DrillPlan plan;
+	private long seed;
+	private double areaWidth;
+	private double areaHeight;
+	private double minTravel;
+
+	private volatile double parTime = DEFAULT_PAR_TIME;
+	private volatile int delayMin = DEFAULT_MIN_DELAY;
+	private volatile int delayMax = DEFAULT_MAX_DELAY;
+	private volatile int roundLimit = DEFAULT_MAX_ROUNDS;
+	private volatile int targets = 1;
+	private volatile int noShoots = 0;
+
+	private final AtomicBoolean shootToReset = new AtomicBoolean(false);
+	private final AtomicReference<RoundWindow> window = new AtomicReference<>(RoundWindow.initial(0, false));
+	private volatile DrillScheduler.ScheduledTask parExpiry;
+	private volatile Runnable nextStage;
+
+	ParDrillEngine(DrillHost host, DrillScheduler scheduler, DrillMetrics metrics) {
+		this.host = host;
+		this.scheduler = scheduler;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Generates the plan for the next drill. Changes to the round limit or the delay range regenerate
+	 * it from the same seed.
+	 *
+	 * @param areaWidth the width of the area the target is placed in
+	 * @param areaHeight the height of the area the target is placed in
+	 * @param minTravel the minimum distance between consecutive placements
+	 */
+	synchronized DrillPlan newDrill(long seed, double areaWidth, double areaHeight, double minTravel) {
+		this.seed = seed;
+		this.areaWidth = areaWidth;
+		this.areaHeight = areaHeight;
+		this.minTravel = minTravel;
+		return rebuildPlan();
+	}
+
+	private synchronized DrillPlan rebuildPlan() {
+		plan = DrillPlan.generate(seed, roundLimit, targets, noShoots, delayMin, delayMax, areaWidth, areaHeight,
+				minTravel);
+		return plan;
+	}
+
+	DrillPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Makes the current drill one stage of a longer program: when it completes, the engine goes back to
+	 * round 0, runs the given task on the scheduler instead of showing the results and then goes on with
+	 * the make ready of the next drill, unless it was paused in between. The task sets the next stage up,
+	 * see {@link #applyStage(DrillProgram.Stage)}. Applies to the next completion only.
+	 *
+	 * @param nextStage the task, or null for the drill to end with its results
+	 */
+	void setNextStage(Runnable nextStage) {
+		this.nextStage = nextStage;
+	}
+
+	/**
+	 * Starts the drill with the make ready cue after the given delay, or resumes a paused drill whose
+	 * round is still pending. A plan must have been generated with
+	 * {@link #newDrill(long, double, double, double)}. A completed drill must be reset first.
+	 */
+	void start(long delay, TimeUnit unit) {
+		while (true) {
+			final RoundWindow current = window.get();
+			if (current.state == RoundState.RESULTS) {
+				return;
+			}
+
+			// Only an idle drill needs a new make ready, otherwise the pending round goes on
+			final boolean idle = current.state == RoundState.IDLE;
+			final RoundWindow started = idle ? current.restarted() : current.withRunning(true);
+			if (window.compareAndSet(current, started)) {
+				if (idle) {
+					scheduler.schedule(new SetupWait(started), delay, unit);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops scheduling rounds. A round that is live keeps running until it closes.
+	 */
+	void pause() {
+		RoundWindow current;
+		do {
+			current = window.get();
+		} while (current.running && !window.compareAndSet(current, current.withRunning(false)));
+	}
+
+	/**
+	 * Forgets all drill state. Tasks of the previous drill pending on the scheduler must have been
+	 * cancelled by the caller; one that is already running finds the drill reset and does nothing.
+	 */
+	void reset() {
+		window.updateAndGet(current -> RoundWindow.initial(current.epoch + 1, false));
+		parExpiry = null;
+		nextStage = null;
+		shootToReset.set(false);
+	}
+
+	private class SetupWait implements Runnable {
+		private final RoundWindow started;
+
+		private SetupWait(RoundWindow started) {
+			this.started = started;
+		}
+
+		@Override
+		public void run() {
+			final RoundWindow armed = transition(started, RoundState.IDLE,
+					current -> current.running ? current.withState(RoundState.ARMED) : current);
+			if (armed == null || armed.state != RoundState.ARMED) {
+				return;
+			}
+
+			host.makeReady();
+			final long roundStart = scheduler.now() + TimeUnit.SECONDS.toNanos(plan.getStartDelay(armed.round));
+			scheduler.scheduleAt(new Round(armed, roundStart), roundStart);
+		}
+	}
+
+	private class TargetHider implements Runnable {
+		@Override
+		public void run() {
+			host.hideTarget();
+		}
+	}
+
+	private class Round implements Runnable {
+		private final RoundWindow armed;
+		private final long plannedStart;
+
+		private Round(RoundWindow armed, long plannedStart) {
+			this.armed = armed;
+			this.plannedStart = plannedStart;
+		}
+
+		@Override
+		public void run() {
+			// Paused while the round was pending: the drill waits idle for the resume
+			final RoundWindow current = transition(armed, RoundState.ARMED,
+					pending -> pending.running ? pending : pending.withState(RoundState.IDLE));
+			if (current != null && current.state == RoundState.ARMED) {
+				doRound(current, scheduler.now() - plannedStart);
+			}
+		}
+	}
+
+	private class ParExpiry implements Runnable {
+		private final RoundWindow live;
+
+		private ParExpiry(RoundWindow live) {
+			this.live = live;
+		}
+
+		@Override
+		public void run() {
+			// The window already ends at the par deadline, closing it only changes the state
+			final RoundWindow closed = transition(live, RoundState.LIVE, current -> current.closed(current.closesAt));
+			if (closed != null) {
+				roundClosed(closed, true);
+			}
+		}
+	}
+
+	private class ParMissCheck implements Runnable {
+		private final RoundWindow closed;
+
+		private ParMissCheck(RoundWindow closed) {
+			this.closed = closed;
+		}
+
+		@Override
+		public void run() {
+			// Sealing makes the miss final, a shot delivered even later no longer counts for the round
+			if (closed.seal()) {
+				logger.info("Round ended without a shot");
+				host.parMissed(closed.round, closed.closesAt);
+			}
+		}
+	}
+
+	private void doRound(RoundWindow armed, long startLateness) {
+		final int round = armed.round + 1;
+		final long beep = host.startRound(round, plan);
+
+		// The par window is measured from the beep, not from when the round setup finished
+		final long parDeadline = beep + (long) (parTime * TimeUnit.SECONDS.toNanos(1));
+		final RoundWindow live = transition(armed, RoundState.ARMED, current -> current.live(beep, parDeadline));
+		if (live == null) {
+			// The drill was reset while the round started
+			host.hideTarget();
+			return;
+		}
+		metrics.roundStarted(round, startLateness, beep);
+		host.setShotDetection(true);
+
+		parExpiry = scheduler.scheduleAt(new ParExpiry(live), parDeadline);
+	}
+
+	/**
+	 * Records a shot captured at the given time. Safe to call from any thread; takes no lock.
+	 *
+	 * @param shotAt the capture time of the shot on the scheduler clock
+	 * @param closesRound whether the shot completes the round if it falls inside it; with a single target
+	 *            every shot does, with several the round lasts until every shoot target was hit
+	 * @return true if the shot was captured inside the window of the current round
+	 */
+	boolean shotFired(long shotAt, boolean closesRound) {
+		RoundWindow current = window.get();
+		if (!current.contains(shotAt) || !current.countShot()) {
+			return false;
+		}
+
+		while (closesRound && current.state == RoundState.LIVE) {
+			// Only the shot that wins the close hands the side effects to the scheduler
+			final RoundWindow closed = current.closed(shotAt + 1);
+			if (window.compareAndSet(current, closed)) {
+				scheduler.execute(() -> roundClosed(closed, false));
+				break;
+			}
+			current = window.get();
+		}
+		return true;
+	}
+
+	/**
+	 * @return true once after the drill is complete and the shot detection was reactivated, meaning the
+	 *         shot being handled should restart the drill
+	 */
+	boolean takeShootToReset() {
+		return shootToReset.compareAndSet(true, false);
+	}
+
+	/**
+	 * Carries out the close of a round after its window was closed, either because the par time expired
+	 * or because a shot completed it. Runs once per round.
+	 */
+	private void roundClosed(RoundWindow closed, boolean parExpired) {
+		final long closedAt = closed.closesAt;
+		if (parExpired) {
+			metrics.parExpired(closed.round, scheduler.now() - closedAt);
+			// A shot captured just before the deadline may still be on its way
+			scheduler.scheduleAt(new ParMissCheck(closed), closedAt + SHOT_DELIVERY_GRACE);
+		} else {
+			final DrillScheduler.ScheduledTask expiry = parExpiry;
+			if (expiry != null) {
+				expiry.cancel();
+			}
+		}
+
+		host.roundClosed(closed.round);
+
+		host.setShotDetection(false);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Round closed {} us after its deadline", (scheduler.now() - closedAt) / 1000);
+		}
+
+		if (closed.round >= roundLimit) {
+			completeDrill(closed);
+		} else {
+			setupRound(closed);
+		}
+	}
+
+	private void completeDrill(RoundWindow closed) {
+		final Runnable next = nextStage;
+		if (next != null) {
+			nextStage = null;
+			completeStage(closed, next);
+			return;
+		}
+
+		if (transition(closed, RoundState.CLOSED,
+				current -> current.withState(RoundState.RESULTS).withRunning(false)) == null) {
+			return;
+		}
+		host.prepareNextRound(closed.hadShot());
+
+		final long roundClosed = closed.closesAt;
+		scheduler.scheduleAt(() -> {
+			host.setShotDetection(true);
+			shootToReset.set(true);
+		}, roundClosed + SHOOT_TO_RESET_DELAY);
+		scheduler.scheduleAt(new TargetHider(), roundClosed + COMPLETE_HIDE_DELAY);
+		scheduler.scheduleAt(host::showResults, roundClosed + RESULTS_DELAY);
+	}
+
+	/**
+	 * Ends a stage of a program like a round, but goes on with the next stage instead of the next round.
+	 * Shot detection stays off until the next stage's first round starts.
+	 */
+	private void completeStage(RoundWindow closed, Runnable next) {
+		host.prepareNextRound(closed.hadShot());
+
+		final long roundClosed = closed.closesAt;
+		scheduler.scheduleAt(new TargetHider(), roundClosed + COMPLETE_HIDE_DELAY);
+		scheduler.scheduleAt(() -> {
+			// Every task of the stage has run, the late par miss check included
+			final RoundWindow started = transition(closed, RoundState.CLOSED,
+					current -> RoundWindow.initial(current.epoch, current.running));
+			if (started == null) {
+				return;
+			}
+			next.run();
+			if (started.running) {
+				scheduler.scheduleAt(new SetupWait(started), roundClosed + RESULTS_DELAY + STAGE_BREAK);
+			}
+		}, roundClosed + RESULTS_DELAY);
+	}
+
+	/**
+	 * Schedules the target hide and the next round relative to when the previous round closed.
+	 * Both deadlines are computed from the planned close time, so a late wakeup of one task is not
+	 * carried over into the next one.
+	 */
+	private void setupRound(RoundWindow closed) {
+		host.prepareNextRound(closed.hadShot());
+
+		final DrillPlan plan = this.plan;
+		final long roundClosed = closed.closesAt;
+		// The plan can hide the targets at the instant the next round starts; scheduled first, the hide
+		// runs first
+		scheduler.scheduleAt(new TargetHider(), roundClosed + TimeUnit.SECONDS.toNanos(plan.getHideDelay(closed.round - 1)));
+
+		// Paused: the drill waits idle for the resume, which starts with a make ready
+		final RoundWindow armed = transition(closed, RoundState.CLOSED,
+				current -> current.withState(current.running ? RoundState.ARMED : RoundState.IDLE));
+		if (armed != null && armed.state == RoundState.ARMED) {
+			// Never open the next window before a late shot of this round could have arrived
+			final long nextRound = roundClosed + Math.max(SHOT_DELIVERY_GRACE,
+					TimeUnit.SECONDS.toNanos(plan.getStartDelay(closed.round)));
+			scheduler.scheduleAt(new Round(armed, nextRound), nextRound);
+		}
+	}
+
+	/**
+	 * Replaces the window if the drill is still in the expected round and state.
+	 *
+	 * @param expected the window the caller was scheduled from
+	 * @return the new window, or null if the drill was reset or has moved on since
+	 */
+	private RoundWindow transition(RoundWindow expected, RoundState from, UnaryOperator<RoundWindow> next) {
+		while (true) {
+			final RoundWindow current = window.get();
+			if (!current.isSameRound(expected) || current.state != from) {
+				return null;
+			}
+			final RoundWindow replaced = next.apply(current);
+			if (window.compareAndSet(current, replaced)) {
+				return replaced;
+			}
+		}
+	}
+
+	/**
+	 * @return false once the drill was paused or completed
+	 */
+	boolean isRunning() {
+		return window.get().running;
+	}
+
+	/**
+	 * @return true while the par window of a round is open
+	 */
+	boolean isRoundLive() {
+		return window.get().state == RoundState.LIVE;
+	}
+
+	boolean isDrillComplete() {
+		return window.get().state == RoundState.RESULTS;
+	}
+
+	int getRound() {
+		return window.get().round;
+	}
+
+	double getParTime() {
+		return parTime;
+	}
+
+	void setParTime(double parTime) {
+		this.parTime = parTime;
+	}
+
+	int getDelayMin() {
+		return delayMin;
+	}
+
+	int getDelayMax() {
+		return delayMax;
+	}
+
+	synchronized void setDelayRange(int min, int max) {
+		delayMin = min;
+		delayMax = max;
+		if (plan != null) {
+			rebuildPlan();
+		}
+	}
+
+	int getTargets() {
+		return targets;
+	}
+
+	int getNoShoots() {
+		return noShoots;
+	}
+
+	/**
+	 * @param targets the number of targets shown in each round
+	 * @param noShoots how many of them are no-shoot targets
+	 */
+	synchronized void setTargets(int targets, int noShoots) {
+		this.targets = targets;
+		this.noShoots = noShoots;
+		if (plan != null) {
+			rebuildPlan();
+		}
+	}
+
+	int getRoundLimit() {
+		return roundLimit;
+	}
+
+	/**
+	 * Takes over a stage's settings at once; the plan is generated afterwards with
+	 * {@link #newDrill(long, double, double, double)}.
+	 */
+	synchronized void applyStage(DrillProgram.Stage stage) {
+		parTime = stage.parTime;
+		delayMin = stage.delayMin;
+		delayMax = stage.delayMax;
+		roundLimit = stage.rounds;
+		targets = stage.targets;
+		noShoots = stage.noShoots;
+	}
+
+	synchronized void setRoundLimit(int roundLimit) {
+		this.roundLimit = roundLimit;
+		if (plan != null) {
+			rebuildPlan();
+		}
+	}
+
+	/**
+	 * The current round, its state and the capture times of the shots that belong to it, together with
+	 * the drill's epoch and whether it runs or is paused. Transitions replace the whole window; only the
+	 * shot count is shared between the windows of one round.
+	 */
+	private static final class RoundWindow {
+		private static final int SEALED = -1;
+
+		private final int round;
+		private final RoundState state;
+		private final long opensAt;
+		// While the round is live, the par deadline
+		private final long closesAt;
+		// Shots counted for the round, or SEALED once it was reported as a par miss
+		private final AtomicInteger shots;
+		// Changes whenever the drill is started from idle or reset
+		private final int epoch;
+		// Whether rounds should keep being scheduled; the operator's intent rather than round state
+		private final boolean running;
+
+		private RoundWindow(int round, RoundState state, long opensAt, long closesAt, AtomicInteger shots, int epoch,
+				boolean running) {
+			this.round = round;
+			this.state = state;
+			this.opensAt = opensAt;
+			this.closesAt = closesAt;
+			this.shots = shots;
+			this.epoch = epoch;
+			this.running = running;
+		}
+
+		private static RoundWindow initial(int epoch, boolean running) {
+			return new RoundWindow(0, RoundState.IDLE, 0, 0, new AtomicInteger(), epoch, running);
+		}
+
+		private RoundWindow withState(RoundState next) {
+			return new RoundWindow(round, next, opensAt, closesAt, shots, epoch, running);
+		}
+
+		private RoundWindow withRunning(boolean next) {
+			return new RoundWindow(round, state, opensAt, closesAt, shots, epoch, next);
+		}
+
+		private RoundWindow restarted() {
+			return new RoundWindow(round, state, opensAt, closesAt, shots, epoch + 1, true);
+		}
+
+		private RoundWindow live(long beep, long parDeadline) {
+			return new RoundWindow(round + 1, RoundState.LIVE, beep, parDeadline, new AtomicInteger(), epoch, running);
+		}
+
+		private RoundWindow closed(long at) {
+			return new RoundWindow(round, RoundState.CLOSED, opensAt, at, shots, epoch, running);
+		}
+
+		private boolean isSameRound(RoundWindow other) {
+			return epoch == other.epoch && round == other.round;
+		}
+
+		private boolean contains(long time) {
+			return round > 0 && time - opensAt >= 0 && time - closesAt < 0;
+		}
+
+		/**
+		 * @return false if the round was already sealed as a par miss
+		 */
+		private boolean countShot() {
+			int counted;
+			do {
+				counted = shots.get();
+				if (counted == SEALED) {
+					return false;
+				}
+			} while (!shots.compareAndSet(counted, counted + 1));
+			return true;
+		}
+
+		/**
+		 * @return true if the round had no shot and is now sealed against late ones
+		 */
+		private boolean seal() {
+			return shots.compareAndSet(0, SEALED);
+		}
+
+		private boolean hadShot() {
+			return shots.get() > 0;
+		}
+	}
+}
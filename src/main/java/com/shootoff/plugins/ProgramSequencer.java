@@ -0,0 +1,125 @@
+package com.shootoff.plugins;
+
+/**
+ * Runs the stages of a {@link DrillProgram} back to back on one {@link ParDrillEngine}. When a stage's
+ * last round closed, the engine goes straight on with the next stage on the same scheduler, targets and
+ * caches; nothing is torn down or rebuilt between stages, only the next stage's plan is generated.
+ *
+ * The sequencer keeps the statistics of every stage. Shots count for the stage that is running when
+ * they are recorded; the statistics of the whole program are the drill's usual ones.
+ */
+class ProgramSequencer {
+	/**
+	 * What the exercise or the simulator does at the stage boundaries.
+	 */
+	interface StageHost {
+		/**
+		 * Generates the engine's plan for a stage whose settings were just applied.
+		 *
+		 * @param stage the stage's index, starting at 0
+		 */
+		void planStage(int stage);
+
+		/**
+		 * A stage other than the last one completed and the next one is planned. Called on the scheduler,
+		 * shortly before the next stage's make ready.
+		 *
+		 * @param stage the index of the completed stage
+		 */
+		void stageCompleted(int stage);
+	}
+
+	private final DrillProgram program;
+	private final ParDrillEngine engine;
+	private final StageHost host;
+	private final DrillStatistics[] stageStatistics;
+	private final int[] stageNoShootHits;
+	private volatile int stage = 0;
+
+	ProgramSequencer(DrillProgram program, ParDrillEngine engine, StageHost host) {
+		this.program = program;
+		this.engine = engine;
+		this.host = host;
+		stageStatistics = new DrillStatistics[program.size()];
+		for (int i = 0; i < stageStatistics.length; i++) {
+			stageStatistics[i] = new DrillStatistics();
+		}
+		stageNoShootHits = new int[program.size()];
+	}
+
+	DrillProgram getProgram() {
+		return program;
+	}
+
+	/**
+	 * Forgets the statistics and sets the engine up for the first stage. The engine must have been reset
+	 * and is started as usual.
+	 */
+	synchronized void rewind() {
+		for (int i = 0; i < stageStatistics.length; i++) {
+			stageStatistics[i].clear();
+			stageNoShootHits[i] = 0;
+		}
+		enter(0);
+	}
+
+	private void enter(int next) {
+		stage = next;
+		engine.applyStage(program.getStage(next));
+		host.planStage(next);
+		engine.setNextStage(next + 1 < program.size() ? this::advance : null);
+	}
+
+	private synchronized void advance() {
+		final int completed = stage;
+		enter(completed + 1);
+		host.stageCompleted(completed);
+	}
+
+	synchronized void record(float time, int points, boolean hit, boolean missedPar, boolean noShoot) {
+		stageStatistics[stage].add(time, points, hit, missedPar);
+		if (noShoot) {
+			stageNoShootHits[stage]++;
+		}
+	}
+
+	/**
+	 * @return the index of the running stage, starting at 0
+	 */
+	int getStage() {
+		return stage;
+	}
+
+	DrillProgram.Stage getCurrentStage() {
+		return program.getStage(stage);
+	}
+
+	DrillStatistics.Snapshot getStatistics(int stage) {
+		return stageStatistics[stage].snapshot();
+	}
+
+	synchronized int getNoShootHits(int stage) {
+		return stageNoShootHits[stage];
+	}
+
+	/**
+	 * @return the results of one stage, such as {@code Stage 1/3 Draw: 41 points, 1.523 s average, 1 missed, 0 par missed}
+	 */
+	String formatStage(int stage) {
+		final DrillStatistics.Snapshot stats = getStatistics(stage);
+		return String.format("Stage %d/%d %s: %d points, %.3f s average, %d missed, %d par missed", stage + 1,
+				program.size(), program.getStage(stage).name, stats.pointsTotal,
+				stats.shots > 0 ? stats.getAverageTime() : 0f, stats.misses, stats.parMisses);
+	}
+
+	/**
+	 * @return the results of every stage up to the running one, one per line
+	 */
+	String formatStages() {
+		final StringBuilder stages = new StringBuilder("Stages:");
+		for (int i = 0; i <= stage; i++) {
+			stages.append("\n  ").append(formatStage(i));
+		}
+		return stages.toString();
+	}
+}
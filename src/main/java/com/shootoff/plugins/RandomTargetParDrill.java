@@ -5,42 +5,58 @@ import com.shootoff.camera.shot.ArenaShot;
 import com.shootoff.camera.shot.DisplayShot;
 import com.shootoff.camera.shot.ShotColor;
 import com.shootoff.gui.DelayedStartListener;
+import com.shootoff.gui.LaneListener;
 import com.shootoff.gui.LocatedImage;
 import com.shootoff.gui.ParListener;
 import com.shootoff.gui.RoundLimitListener;
+import com.shootoff.gui.TargetCountListener;
 import com.shootoff.targets.Hit;
 import com.shootoff.targets.Target;
 import com.shootoff.targets.TargetRegion;
 import com.shootoff.util.NamedThreadFactory;
 import javafx.application.Platform;
-import javafx.geometry.Bounds;
+import javafx.geometry.Dimension2D;
 import javafx.geometry.Insets;
 import javafx.geometry.Point2D;
-import javafx.scene.Group;
-import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Ellipse;
 import javafx.scene.text.Font;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implements RoundLimitListener, ParListener, TrainingExercise, DelayedStartListener {
+public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implements RoundLimitListener, TargetCountListener, LaneListener, ParListener, TrainingExercise, DelayedStartListener {
 	private static final Logger logger = LoggerFactory.getLogger(RandomTargetParDrill.class);
 
 	private static final String TARGET_FILE = "@targets/ISSF.target";
+	private static final String TARGET_RESOURCE = "/targets/ISSF.target";
+	private static final String NO_SHOOT_TARGET_FILE = "@targets/NoShoot.target";
+	private static final String NO_SHOOT_TARGET_RESOURCE = "/targets/NoShoot.target";
+	private static final String BACKGROUND_IMAGE = "/backgrounds/blackBG.png";
 	private static final String BUZZER_WAV = "/sounds/buzzer.wav";
+	private static final String BEEP_WAV = "sounds/beep.wav";
+	private static final String MAKE_READY_WAV = "sounds/voice/shootoff-makeready.wav";
+	// The single drill's sound cues play on the first lane's voice
+	private static final int DRILL_VOICE = 0;
 	private static final String PAUSE = "Pause";
 	private static final String RESUME = "Resume";
 
@@ -51,39 +67,84 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 
 	private static final int START_DELAY = 10; // s
 	private static final int RESUME_DELAY = 5; // s
-	private static final int CORE_POOL_SIZE = 2;
 
-	private Target target;
+	private static final File ARCHIVE_DIR = new File("sessions");
+	private static final String ARCHIVE_NAME = "RandomTargetParDrill";
+	private static final int HISTORY_TREND_DRILLS = 10;
+	private static final String GROUP_EXPORT_NAME = ARCHIVE_NAME + "-groups.csv";
+
+	private static final String SEED_PROPERTY = "shootoff.randomTargetParDrill.seed";
+	private static final String TRACE_DIR_PROPERTY = "shootoff.randomTargetParDrill.traceDir";
+	private static final String PROGRAM_PROPERTY = "shootoff.randomTargetParDrill.program";
+	private static final String LIVE_PORT_PROPERTY = "shootoff.randomTargetParDrill.livePort";
+	private static final String GROUP_EXPORT_DIR_PROPERTY = "shootoff.randomTargetParDrill.groupExportDir";
+	private static final String SHOT_RETENTION_PROPERTY = "shootoff.randomTargetParDrill.shotRetention";
+	private static final int DEFAULT_SHOT_RETENTION = 4096;
+	private static final int SHOT_RING_SIZE = 256;
+	private static final String MERGE_WINDOW_PROPERTY = "shootoff.randomTargetParDrill.mergeWindow";
+	private static final String MERGE_RADIUS_PROPERTY = "shootoff.randomTargetParDrill.mergeRadius";
+	private static final int DEFAULT_MERGE_WINDOW = 120; // ms
+	private static final int DEFAULT_MERGE_RADIUS = 20; // px
+
 	private Button pauseResumeButton;
 	private final Label roundLabel = new Label();
 	private final Label timeLabel = new Label();
+	private final ImageView resultsView = new ImageView();
+	private WritableImage resultsImage;
 	private Font arenaFont = new Font(null, 40);
 
-	private ScheduledExecutorService executorService = Executors.newScheduledThreadPool(CORE_POOL_SIZE,
-			new NamedThreadFactory("RandomScoredTargetWithParLimitedShot"));
-
-	private static final double DEFAULT_PAR_TIME  = 4.0;
-	private static final int DEFAULT_MIN_DELAY = 5;
-	private static final int DEFAULT_MAX_DELAY = 8;
-	private static final int DEFAULT_MAX_ROUNDS = 10;
-	private double parTime = DEFAULT_PAR_TIME;
-	private int delayMin = DEFAULT_MIN_DELAY;
-	private int delayMax = DEFAULT_MAX_DELAY;
-	private int roundLimit = DEFAULT_MAX_ROUNDS;
-	private boolean repeatExercise = true;
-	private boolean countScore = false;
-	private boolean shootToReset = false;
-	private boolean hadShot = false;
-	private boolean isDrillComplete = false;
-	private long beepTime = 0;
-	private long roundStartTime = 0;
-	private float shotTime;
-	private int score = 0;
-	private int round = 0;
+	private final DrillMetrics metrics = new DrillMetrics();
+	// A worker for every lane's strand and one for the drill's other untimed work, such as latency
+	// calibration and group export, so a lane's strand always finds a free worker
+	private final TimingWheelScheduler scheduler = new TimingWheelScheduler(new NamedThreadFactory("RandomTargetParDrill"),
+			metrics, DrillLane.MAX_LANES + 1);
+	private final ParDrillEngine engine = new ParDrillEngine(new ArenaDrillHost(), scheduler, metrics);
+	private final Random seedSource = new Random();
+	private double placementWidth = 0;
+	private double placementHeight = 0;
+
+	private final AudioCueCache audioCueCache = new AudioCueCache(DrillLane.MAX_LANES);
+	private final LatencyCalibration latencyCalibration = LatencyCalibration.load();
+	private final ShotClock shotClock = new ShotClock(latencyCalibration);
+	private volatile long beepNanos = 0;
+	private long roundStartNanos = 0;
+	private volatile float shotTime;
+	private final AtomicInteger score = new AtomicInteger();
 	private boolean coloredRows = false;
 
-	private List<TrackedShot> trackedShots = new LinkedList<>();
-
+	private final ShotStore shotStore = new ShotStore(Integer.getInteger(SHOT_RETENTION_PROPERTY, DEFAULT_SHOT_RETENTION));
+	private final MarkerRegistry markerRegistry = new MarkerRegistry(shotStore.capacity());
+	private final DrillStatistics drillStatistics = new DrillStatistics();
+	private final GroupStatistics groupStatistics = new GroupStatistics();
+	// Set the merge window to 0 to score every detection
+	private final ShotFilter shotFilter = new ShotFilter(Integer.getInteger(MERGE_WINDOW_PROPERTY, DEFAULT_MERGE_WINDOW),
+			TimeUnit.MILLISECONDS, Integer.getInteger(MERGE_RADIUS_PROPERTY, DEFAULT_MERGE_RADIUS));
+	private final ShotPipeline shotPipeline = new ShotPipeline(SHOT_RING_SIZE, new NamedThreadFactory("RandomTargetParDrill-shots"),
+			this::scoreShot, this::storeShot, this::displayShot, this::logShot);
+	private final UiUpdateBus uiUpdateBus = new UiUpdateBus(roundLabel, timeLabel, this::showTextOnFeed, markerRegistry, metrics);
+	private final RoundTargets roundTargets = new RoundTargets(file -> addTarget(file, 0, 0), new File(TARGET_FILE),
+			new File(NO_SHOOT_TARGET_FILE));
+	private final ShotRecorder shotRecorder = new ShotRecorder(shotStore, markerRegistry, drillStatistics, groupStatistics,
+			roundTargets);
+	private volatile ScoringIndex scoringIndex;
+	private volatile ScoringIndex noShootIndex;
+	private volatile ResultsRenderer resultsRenderer;
+	private volatile int noShootHits = 0;
+	private volatile DrillLane[] lanes = new DrillLane[0];
+	private final RoundTargets[] laneTargets = new RoundTargets[DrillLane.MAX_LANES];
+	private volatile int laneCount = 0;
+	private volatile DrillLane.LaneKey laneKey = DrillLane.LaneKey.REGION;
+	private SessionArchive sessionArchive;
+	private volatile ShotTrace shotTrace;
+	private volatile ProgramSequencer programSequencer;
+	private volatile LiveEventServer liveEventServer;
+
+
+	static {
+		// ShootOFF loads the class when it lists the exercises, long before the drill is started
+		AssetCache.preload(new String[] { TARGET_RESOURCE, NO_SHOOT_TARGET_RESOURCE }, new String[] { BACKGROUND_IMAGE },
+				new String[] { BEEP_WAV, MAKE_READY_WAV, BUZZER_WAV });
+	}
 
 	public RandomTargetParDrill() {
 	}
@@ -100,7 +161,12 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 
 	@Override
 	public void init() {
+		shotPipeline.start();
+		openArchive();
+		openLiveEvents();
+		initAudio();
 		createTarget();
+		loadProgram();
 		initUI();
 		initService();
 	}
@@ -108,78 +174,240 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 	@Override
 	public void reset(List<Target> targets) {
 		pauseShotDetection(true);
-		executorService.shutdownNow();
+		scheduler.cancelAll();
 		pauseResumeButton.setText(PAUSE);
 
 		hideTarget();
 		hideShots();
 
+		engine.reset();
 		resetValues();
 
-		executorService = Executors.newScheduledThreadPool(CORE_POOL_SIZE,
-				new NamedThreadFactory("RandomTargetParDrill"));
-		executorService.schedule(new RandomTargetParDrill.SetupWait(), RESUME_DELAY, TimeUnit.SECONDS);
+		startDrill(RESUME_DELAY);
 	}
 
 	@Override
 	public void destroy() {
-		repeatExercise = false;
+		pauseDrill();
 		removeRoundLabel();
 		removeTimeLabel();
-		executorService.shutdownNow();
+		removeResultsView();
+		scheduler.close();
+		shotPipeline.close();
+		audioCueCache.close();
+		closeArchive();
+		closeTrace();
+		closeLiveEvents();
+		uiUpdateBus.stopOnFxThread();
 		super.destroy();
 	}
 
-	protected class SetupWait implements Runnable {
+	/**
+	 * Carries out the drill engine's rounds on the arena.
+	 */
+	private class ArenaDrillHost implements DrillHost {
 		@Override
-		public void run() {
-			if (!repeatExercise){
-				return;
+		public void makeReady() {
+			pauseShotDetection(true);
+			if (!audioCueCache.play(MAKE_READY_WAV, DRILL_VOICE)) {
+				playSound(new File(MAKE_READY_WAV));
+			}
+		}
+
+		@Override
+		public long startRound(int round, DrillPlan plan) {
+			final long startedAt = ShotClock.now();
+			if (!audioCueCache.play(BEEP_WAV, DRILL_VOICE)) {
+				playSound(BEEP_WAV);
+			}
+			startRoundTimer();
+
+			final ShotTrace trace = shotTrace;
+			if (trace != null) {
+				try {
+					trace.round(round, startedAt, beepNanos);
+				} catch (IOException e) {
+					traceFailed(e);
+				}
 			}
 
-			pauseShotDetection(true);
-			playSound(new File("sounds/voice/shootoff-makeready.wav"));
-			final int randomDelay = new Random().nextInt((delayMax - delayMin) + 1) + delayMin;
+			placeTargets(round, plan);
+			showTarget();
 
-			if (repeatExercise) {
-				executorService.schedule(new RandomTargetParDrill.Round(), randomDelay, TimeUnit.SECONDS);
+			updateRoundLabel();
+			hideLastTime();
+
+			final LiveEventServer live = liveEventServer;
+			if (live != null) {
+				final ProgramSequencer sequencer = programSequencer;
+				live.publish(LiveEvents.round(round, engine.getRoundLimit(), engine.getParTime(),
+						sequencer != null ? sequencer.getStage() + 1 : 0, sequencer != null ? sequencer.getProgram().size() : 0));
 			}
+			return beepNanos;
+		}
+
+		@Override
+		public void setShotDetection(boolean enabled) {
+			pauseShotDetection(!enabled);
 		}
-	}
 
-	protected class TargetHider implements Runnable {
 		@Override
-		public void run() {
-			hideTarget();
+		public void parMissed(int round, long parExpired) {
+			RandomTargetParDrill.this.parMissed(round, parExpired);
+		}
+
+		@Override
+		public void roundClosed(int round) {
+			soundBuzzer(DRILL_VOICE);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Max scheduling lateness {} us, beep start latency {} us", scheduler.getMaxLateness() / 1000,
+						audioCueCache.getStartLatency(BEEP_WAV) / 1000);
+			}
+		}
+
+		@Override
+		public void prepareNextRound(boolean hadShot) {
+			if (hadShot) {
+				coloredRows = !coloredRows;
+			}
+			setShotTimerRowColor(null);
+		}
+
+		@Override
+		public void hideTarget() {
+			RandomTargetParDrill.this.hideTarget();
 			hideShots();
 		}
+
+		@Override
+		public void showResults() {
+			displayResults();
+		}
 	}
 
-	protected class Round implements Runnable {
+	/**
+	 * Carries out one lane's rounds in the lane's strip of the arena. Lanes share the camera, so shot
+	 * detection stays on while the lanes run and each lane ignores shots outside its own rounds.
+	 */
+	private class LaneDrillHost implements DrillHost {
+		private final DrillLane lane;
+
+		private LaneDrillHost(DrillLane lane) {
+			this.lane = lane;
+		}
+
 		@Override
-		public void run() {
-			if (repeatExercise) {
-				doRound();
-				executorService.schedule(new RandomTargetParDrill.Round(), setupRound(), TimeUnit.SECONDS);
+		public void makeReady() {
+			if (!audioCueCache.play(MAKE_READY_WAV, lane.getNumber())) {
+				playSound(new File(MAKE_READY_WAV));
+			}
+		}
+
+		@Override
+		public long startRound(int round, DrillPlan plan) {
+			if (!audioCueCache.play(BEEP_WAV, lane.getNumber())) {
+				playSound(BEEP_WAV);
+			}
+			// Lanes keep their own beep time, the shot clock's beep belongs to the single drill
+			lane.setBeepNanos(ShotClock.now() + latencyCalibration.getAudioLatency());
+
+			lane.placeTargets(plan, round);
+			lane.getTargets().show();
+
+			updateRoundLabel();
+			return lane.getBeepNanos();
+		}
+
+		@Override
+		public void setShotDetection(boolean enabled) {
+		}
 
-				if(isDrillComplete){
-					executorService.schedule(RandomTargetParDrill.this::displayResults, 1, TimeUnit.SECONDS);
+		@Override
+		public void parMissed(int round, long parExpired) {
+			final float parTime = (float) ((parExpired - lane.getBeepNanos()) / (double) TimeUnit.SECONDS.toNanos(1));
+			lane.getStatistics().add(parTime, 0, false, true);
+			setLastTime(String.format("Lane %d: par missed!", lane.getNumber() + 1));
+		}
+
+		@Override
+		public void roundClosed(int round) {
+			soundBuzzer(lane.getNumber());
+		}
+
+		@Override
+		public void prepareNextRound(boolean hadShot) {
+		}
+
+		@Override
+		public void hideTarget() {
+			lane.getTargets().hideAll();
+			lane.takeRoundMarkers(slot -> markerRegistry.setVisible(slot, false));
+			uiUpdateBus.markersChanged();
+		}
+
+		@Override
+		public void showResults() {
+			displayLaneResults();
+		}
+	}
+
+	/**
+	 * Carries out the stage changes of a drill program on the arena.
+	 */
+	private class ArenaStageHost implements ProgramSequencer.StageHost {
+		@Override
+		public void planStage(int stage) {
+			planDrill();
+		}
+
+		@Override
+		public void stageCompleted(int stage) {
+			final ProgramSequencer sequencer = programSequencer;
+			final DrillStatistics.Snapshot stats = sequencer.getStatistics(stage);
+
+			// Every stage is archived and traced as a drill of its own
+			final SessionArchive archive = sessionArchive;
+			if (archive != null) {
+				try {
+					archive.endDrill(stats.shots, stats.misses, stats.parMisses, stats.pointsTotal, (float) stats.timeTotal);
+					archive.beginDrill(System.currentTimeMillis(), (float) engine.getParTime());
+				} catch (IOException e) {
+					archiveFailed(e);
+				}
+			}
+			final ShotTrace trace = shotTrace;
+			if (trace != null) {
+				try {
+					trace.results(stats, sequencer.getNoShootHits(stage));
+					traceDrill(trace);
+				} catch (IOException e) {
+					traceFailed(e);
 				}
 			}
+
+			uiUpdateBus.setFeedText(String.format("%s\nNext: %s", sequencer.formatStage(stage),
+					sequencer.getCurrentStage().name));
+			updateRoundLabel();
+
+			final LiveEventServer live = liveEventServer;
+			if (live != null) {
+				live.publish(LiveEvents.stage(stage + 1, stats));
+			}
 		}
 	}
 
 	private void setBackground(){
-		final InputStream is = RandomTargetParDrill.class.getResourceAsStream("/backgrounds/blackBG.png");
-		final LocatedImage img = new LocatedImage(is, "/backgrounds/blackBG.png");
-		setArenaBackground(img);
+		final LocatedImage img = AssetCache.await(AssetCache.image(BACKGROUND_IMAGE));
+		if (img != null) {
+			setArenaBackground(img);
+		}
 	}
 
 	protected void initUI() {
 		setBackground();
 		pauseResumeButton = addShootOFFButton(PAUSE, (event) -> {
-			if(round >= roundLimit){
-				soundBuzzer();
+			if(isDrillFinished()){
+				soundBuzzer(DRILL_VOICE);
 				return;
 			}
 
@@ -187,16 +415,18 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 
 			if (PAUSE.equals(pauseResumeButton.getText())) {
 				pauseResumeButton.setText(RESUME);
-				repeatExercise = false;
+				pauseDrill();
 				pauseShotDetection(true);
 			} else {
 				pauseResumeButton.setText(PAUSE);
-				repeatExercise = true;
-				executorService.schedule(new RandomTargetParDrill.SetupWait(), RESUME_DELAY, TimeUnit.SECONDS);
+				startDrill(RESUME_DELAY);
 			}
 		});
 
 		addShootOFFButton("Clear Shots", (event) -> super.clearShots());
+		addShootOFFButton("Calibrate Latency", (event) -> calibrateLatency());
+		addShootOFFButton("History", (event) -> showHistory());
+		addShootOFFButton("Timing", (event) -> showTiming());
 		addShotTimerColumn(LENGTH_COL_NAME, LENGTH_COL_WIDTH);
 		addShotTimerColumn(POINTS_COL_NAME, POINTS_COL_WIDTH);
 
@@ -204,18 +434,18 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 		showTextOnFeed("Score: 0",10,10, Color.TRANSPARENT, Color.WHITE, this.arenaFont);
 		initRoundLabel();
 		initTimeLabel();
+		initResultsView();
 		addRoundLimitExcersizePane();
+		uiUpdateBus.startOnFxThread();
 	}
 
 
-	private void setLength() {
-		final float drawShotLength = (float) (System.currentTimeMillis() - beepTime) / (float) 1000; // s
-		setShotTimerColumnText(LENGTH_COL_NAME, String.format("%.2f", drawShotLength));
-		this.shotTime = drawShotLength;
+	private void showLength(float length) {
+		setShotTimerColumnText(LENGTH_COL_NAME, String.format("%.2f", length));
 	}
 
 	private void initRoundLabel(){
-		String roundText = String.format("Round: %d/%d", 0, roundLimit);
+		String roundText = String.format("Round: %d/%d", 0, engine.getRoundLimit());
 		roundLabel.setText(roundText);
 		Platform.runLater(() -> {
 			this.getArenaPane().getCanvasManager().getCanvasGroup().getChildren().add(roundLabel);
@@ -241,289 +471,874 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 		});
 	}
 
+	private void initResultsView(){
+		resultsView.setVisible(false);
+		resultsView.setMouseTransparent(true);
+		Platform.runLater(() -> this.getArenaPane().getCanvasManager().getCanvasGroup().getChildren().add(resultsView));
+	}
+
+	private void removeResultsView(){
+		Platform.runLater(() -> {
+			if (this.getArenaPane() != null) {
+				this.getArenaPane().getCanvasManager().getCanvasGroup().getChildren().remove(resultsView);
+			}
+		});
+	}
+
+	private void showTiming() {
+		final StringBuilder timing = new StringBuilder(metrics.summary()).append('\n').append(shotFilter.summary())
+				.append('\n').append(shotPipeline.summary());
+		final LiveEventServer live = liveEventServer;
+		if (live != null) {
+			timing.append('\n').append(live.summary());
+		}
+		uiUpdateBus.setFeedText(timing.toString());
+	}
+
+	private void calibrateLatency() {
+		if (engine.isRoundLive()) {
+			logger.info("Not calibrating latency during a live round");
+			return;
+		}
+
+		scheduler.execute(() -> latencyCalibration.calibrate(audioCueCache, BEEP_WAV));
+	}
+
 	private void initService() {
 		pauseShotDetection(true);
 		resetValues();
 
-		executorService.schedule(new RandomTargetParDrill.SetupWait(), START_DELAY, TimeUnit.SECONDS);
+		startDrill(START_DELAY);
 	}
 
-	private void createTarget(){
-		Optional<Target> target = super.addTarget(new File(TARGET_FILE), 0,0);
-		if(target.isPresent()) {
-			target.get().setVisible(false);
-			this.target = target.get();
+	/**
+	 * Starts the single drill or every lane after the given delay in seconds.
+	 */
+	private void startDrill(long delay) {
+		final DrillLane[] lanes = this.lanes;
+		if (lanes.length == 0) {
+			engine.start(delay, TimeUnit.SECONDS);
+			return;
 		}
+
+		for (DrillLane lane : lanes) {
+			lane.getEngine().start(delay, TimeUnit.SECONDS);
+		}
+		pauseShotDetection(false);
 	}
 
-	private int setupRound() {
-		if (hadShot) {
-			coloredRows = !coloredRows;
-			hadShot = false;
+	private void pauseDrill() {
+		engine.pause();
+		for (DrillLane lane : lanes) {
+			lane.getEngine().pause();
 		}
-		setShotTimerRowColor(null);
+	}
 
-		final int randomDelay = new Random().nextInt((delayMax - delayMin) + 1) + delayMin;
-		final int randomDelay2 = new Random().nextInt((Integer.max((delayMax/2), delayMin) - delayMin) + 1) + delayMin;
+	private boolean isDrillFinished() {
+		final DrillLane[] lanes = this.lanes;
+		if (lanes.length == 0) {
+			return engine.getRound() >= engine.getRoundLimit();
+		}
+		return allLanesComplete(lanes);
+	}
 
-		if(isDrillComplete) {
-			executorService.schedule(new RandomTargetParDrill.TargetHider(), 500, TimeUnit.MILLISECONDS);
-			return 0;
-		} else {
-			executorService.schedule(new RandomTargetParDrill.TargetHider(), Integer.min(randomDelay, randomDelay2), TimeUnit.SECONDS);
+	private static boolean allLanesComplete(DrillLane[] lanes) {
+		for (DrillLane lane : lanes) {
+			if (!lane.getEngine().isDrillComplete()) {
+				return false;
+			}
 		}
-		return randomDelay;
+		return true;
 	}
 
-	private void doRound() {
-		countScore = true;
-		round++;
-		playSound("sounds/beep.wav");
+	/**
+	 * Replaces the lanes with the configured number of lanes, each planned from the drill's seed. The
+	 * lanes' targets are kept between drills.
+	 */
+	private void buildLanes() {
+		for (DrillLane lane : lanes) {
+			lane.getTargets().hideAll();
+		}
 
-		randomizeTargets();
-		showTarget();
+		final int count = laneCount;
+		if (count < 2) {
+			lanes = new DrillLane[0];
+			return;
+		}
 
-		updateRoundLabel();
-		hideLastTime();
+		final double laneWidth = super.getArenaWidth() / count;
+		final long seed = engine.getPlan().getSeed();
+		final DrillLane[] built = new DrillLane[count];
+		for (int i = 0; i < count; i++) {
+			if (laneTargets[i] == null) {
+				laneTargets[i] = new RoundTargets(file -> addTarget(file, 0, 0), new File(TARGET_FILE),
+						new File(NO_SHOOT_TARGET_FILE));
+			}
+			if (!laneTargets[i].ensureCapacity(1, 0)) {
+				logger.error("Could not create the target of lane {}", i + 1);
+			}
 
-		pauseShotDetection(false);
-		startRoundTimer();
+			built[i] = new DrillLane(i, i * laneWidth, laneWidth, scheduler, metrics, laneTargets[i], LaneDrillHost::new);
+			final ParDrillEngine laneEngine = built[i].getEngine();
+			laneEngine.setParTime(engine.getParTime());
+			laneEngine.setDelayRange(engine.getDelayMin(), engine.getDelayMax());
+			laneEngine.setRoundLimit(engine.getRoundLimit());
+			built[i].plan(seed + i, super.getArenaHeight());
+		}
+		lanes = built;
+	}
 
+	private void createTarget(){
+		ensureTargets();
+		scoringIndex = loadScoringIndex(TARGET_RESOURCE);
+		resultsRenderer = new ResultsRenderer(scoringIndex);
+		noShootIndex = loadScoringIndex(NO_SHOOT_TARGET_RESOURCE);
+	}
+
+	/**
+	 * Loads the drill program named by the {@value #PROGRAM_PROPERTY} system property, if it is set. The
+	 * targets of every stage are created up front, so no stage change waits for ShootOFF to add one.
+	 * Lane drills take the settings of the program's first stage and do not go on to the others.
+	 */
+	private void loadProgram() {
+		final String programFile = System.getProperty(PROGRAM_PROPERTY);
+		if (programFile == null) {
+			return;
+		}
+
+		final DrillProgram program;
 		try {
-			Thread.sleep((long) (parTime * 1000.));
-		} catch (final InterruptedException e) {
-			e.printStackTrace();
+			program = DrillProgram.load(new File(programFile));
+		} catch (IOException e) {
+			logger.error("Could not load the drill program {}, running single drills", programFile, e);
+			return;
 		}
 
-		if(!hadShot){
-			logger.info("Round ended without a shot");
-			parMissed();
+		if (!roundTargets.ensureCapacity(program.getMaxShootTargets(), program.getMaxNoShoots())) {
+			logger.error("Could not create all targets of the drill program, stages will show fewer targets");
 		}
+		programSequencer = new ProgramSequencer(program, engine, new ArenaStageHost());
+		logger.info("Loaded drill program {} with {} stages", programFile, program.size());
+	}
 
-		soundBuzzer();
+	private static ScoringIndex loadScoringIndex(String targetResource) {
+		final ScoringIndex index = AssetCache.await(AssetCache.scoringIndex(targetResource));
+		if (index == null) {
+			logger.error("No scoring index for {}, scoring from region tags", targetResource);
+		}
+		return index;
+	}
 
-		pauseShotDetection(true);
-		countScore = false;
-		checkDrillComplete();
+	/**
+	 * Creates the targets the configured rounds need that do not exist yet.
+	 */
+	private void ensureTargets() {
+		if (!roundTargets.ensureCapacity(engine.getTargets() - engine.getNoShoots(), engine.getNoShoots())) {
+			logger.error("Could not create all drill targets, rounds will show fewer targets");
+		}
 	}
 
-	private void soundBuzzer(){
+	private void soundBuzzer(int voice){
+		if (audioCueCache.play(BUZZER_WAV, voice)) {
+			return;
+		}
+
 		InputStream buzzer = new BufferedInputStream(RandomTargetParDrill.class.getResourceAsStream(BUZZER_WAV));
 		TrainingExerciseBase.playSound(buzzer);
 	}
 
+	/**
+	 * Opens lines for the sound cues, which are decoded once per process, so that playing them during a
+	 * round does no file access.
+	 */
+	private void initAudio() {
+		loadSoundCue(BEEP_WAV);
+		loadSoundCue(MAKE_READY_WAV);
+		loadSoundCue(BUZZER_WAV);
+	}
+
+	private void loadSoundCue(String cue) {
+		final AudioCueCache.DecodedCue decoded = AssetCache.await(AssetCache.sound(cue));
+		if (decoded == null) {
+			logger.warn("Sound cue {} missing, falling back to ShootOFF playback", cue);
+			return;
+		}
+		audioCueCache.load(cue, decoded);
+	}
+
 	@Override
 	public void shotListener(Shot shot, Optional<Hit> hit) {
 		if(hit.isPresent() && hit.get().getShot().getColor().equals(ShotColor.GREEN)){
 			return;
 		}
 
-		if (repeatExercise) {
-			hadShot = true;
-			setLength();
+		// Must be taken on delivery, the arrival time refines the camera clock offset
+		final long shotNanos = shotClock.captureTime(shot.getTimestamp());
+
+		// Repeated detections of one trigger pull never reach scoring
+		final ArenaShot arenaShot = (ArenaShot) shot;
+		if (!shotFilter.accept(shotNanos, arenaShot.getArenaX(), arenaShot.getArenaY(), arenaShot.getColor())) {
+			return;
 		}
 
-		if(shootToReset){
-			shootToReset = false;
+		// Everything else runs in the pipeline's stages, so a burst of shots never holds up detection. Claiming
+		// takes no lock either, a par miss published at the same time only takes the next sequence
+		final ShotPipeline.ShotEvent event = shotPipeline.claim();
+		if (event == null) {
+			return;
+		}
+		event.shot = arenaShot;
+		event.hit = hit.orElse(null);
+		event.shotNanos = shotNanos;
+		shotPipeline.publish(event);
+	}
+
+	/**
+	 * First shot stage: attributes the shot to a target, scores it and hands it to the drill engine.
+	 * Lane shots are handled completely here.
+	 */
+	private void scoreShot(ShotPipeline.ShotEvent event) {
+		if (event.parMissed) {
+			traceParMiss(event);
+			return;
+		}
+
+		final DrillLane[] lanes = this.lanes;
+		if (lanes.length > 0) {
+			event.handled = true;
+			laneShot(lanes, event.shot, Optional.ofNullable(event.hit), event.shotNanos);
+			return;
+		}
+
+		final ShotTrace trace = shotTrace;
+		if (trace != null) {
+			try {
+				trace.shot(event.shotNanos, event.shot.getArenaX(), event.shot.getArenaY(), event.shot.getColor(),
+						event.hit != null, event.hit != null ? getPoints(event.hit.getHitRegion()) : 0);
+			} catch (IOException e) {
+				traceFailed(e);
+			}
+		}
+
+		event.running = engine.isRunning();
+		if (event.running) {
+			shotTime = shotClock.secondsSinceBeep(event.shotNanos);
+		}
+		event.time = shotTime;
+
+		if(engine.takeShootToReset()){
+			event.handled = true;
 			this.reset();
 			return;
 		}
 
-		drawShot((ArenaShot)shot);
-		recordShot((ArenaShot)shot, hit, false);
+		final ArenaShot arenaShot = event.shot;
+		final boolean hit = event.hit != null;
+		final boolean closesRound = event.score(roundTargets.getLayout(), scoringIndex, noShootIndex, arenaShot.getArenaX(),
+				arenaShot.getArenaY(), hit);
+		if (hit && event.region == ScoringIndex.NO_REGION) {
+			// No index or the index disagrees with ShootOFF's hit test right on a region edge
+			event.points = getPoints(event.hit.getHitRegion());
+		}
+		event.round = engine.getRound();
+		event.inRound = engine.shotFired(event.shotNanos, closesRound);
+		metrics.shotReceived(event.round, event.shotNanos - beepNanos, event.inRound);
+	}
 
-		if (!hit.isPresent() || !countScore) {
-			if(!countScore){
-				logger.debug("count score is false!");
-			} else {
-				logger.debug("hit is not present!");
+	/**
+	 * Second shot stage: stores the shot, its marker and its statistics and archives it.
+	 */
+	private void storeShot(ShotPipeline.ShotEvent event) {
+		if (event.handled) {
+			return;
+		}
+
+		final ArenaShot shot = event.shot;
+		if(shot.getColor().equals(ShotColor.GREEN)){
+			logger.info("Ignored GREEN shot!!!");
+			return;
+		}
+
+		try {
+			shotRecorder.record(event, shot.getArenaX(), shot.getArenaY(), shot.getMarker(), scoringIndex, programSequencer,
+					sessionArchive);
+		} catch (IOException e) {
+			archiveFailed(e);
+		}
+		uiUpdateBus.markersChanged();
+		if (event.noShoot) {
+			noShootHits++;
+		}
+	}
+
+	/**
+	 * Third shot stage: updates the shot timer, the score and the arena labels.
+	 */
+	private void displayShot(ShotPipeline.ShotEvent event) {
+		if (event.handled) {
+			return;
+		}
+		if (event.parMissed) {
+			displayParMiss(event);
+			return;
+		}
+
+		if (event.running) {
+			showLength(event.time);
+		}
+
+		if (event.hit == null || !event.inRound) {
+			if (event.inRound) {
 				setLastTime("Missed!");
 			}
 			return;
 		}
 
-		Bounds bounds = ((Node)hit.get().getHitRegion()).getBoundsInParent();
-		logger.info(String.format("Region bounds in parent: top: %.2f, left: %.2f; Hit in region: x: %d, y: %d", bounds.getMinY(), bounds.getMinX(), hit.get().getImpactX(), hit.get().getImpactY()));
+		final ArenaShot shot = event.shot;
+		if (event.noShoot) {
+			setPoints(shot.getColor(), 0);
+			setLastTime("No-shoot!");
+			return;
+		}
 
 		String roundScore = "";
-		final TargetRegion r = hit.get().getHitRegion();
-		if (r.tagExists("points")) {
-			String points = r.getTag("points");
-			setPoints(shot.getColor(), points);
-			roundScore += String.format("%d points   -  ", Integer.parseInt(points));
+		final ScoringIndex index = scoringIndex;
+		if (event.region != ScoringIndex.NO_REGION && index != null) {
+			final RoundTargets.Layout layout = event.layout;
+			final int slot = event.target;
+			final float decimal = index.decimalScore(index.toTargetX(shot.getArenaX(), layout.getX(slot), layout.getWidth(slot)),
+					index.toTargetY(shot.getArenaY(), layout.getY(slot), layout.getHeight(slot)));
+			setPoints(shot.getColor(), event.points);
+			roundScore += String.format("%d points (%.1f)   -  ", event.points, decimal);
+		} else if (event.hit.getHitRegion().tagExists("points")) {
+			setPoints(shot.getColor(), event.points);
+			roundScore += String.format("%d points   -  ", event.points);
 		}
 
-		roundScore += String.format("%.3f seconds", shotTime);
+		roundScore += String.format("%.3f seconds", event.time);
 		setLastTime(roundScore);
 	}
 
-	private void recordShot(ArenaShot shot, Optional<Hit> optionalHit, boolean missedPar){
-		if(shot.getColor().equals(ShotColor.GREEN)){
-			logger.info("Ignored GREEN shot!!!");
+	/**
+	 * Last shot stage, kept apart so publishing and debug logging never delay the display.
+	 */
+	private void logShot(ShotPipeline.ShotEvent event) {
+		if (event.handled) {
 			return;
 		}
 
-		Point2D arenaShotPos = new Point2D(shot.getArenaX(), shot.getArenaY());
-		Hit hit = null;
+		final LiveEventServer live = liveEventServer;
+		if (live != null && event.parMissed) {
+			live.publish(LiveEvents.parMiss(event.round, engine.getParTime()));
+			return;
+		}
+		if (live != null && event.inRound) {
+			final RoundTargets.Layout layout = event.layout;
+			final int reference = event.target != TargetGrid.NO_TARGET ? event.target : 0;
+			final boolean placed = reference < layout.size();
+			final double centerX = placed ? layout.getX(reference) + layout.getWidth(reference) / 2 : 0;
+			final double centerY = placed ? layout.getY(reference) + layout.getHeight(reference) / 2 : 0;
+			live.publish(LiveEvents.shot(event.round, event.time, event.points, event.targetHit, event.noShoot,
+					event.shot.getArenaX() - centerX, event.shot.getArenaY() - centerY));
+		}
 
-		if(optionalHit.isPresent()) {
-			hit = optionalHit.get();
+		if (!logger.isDebugEnabled()) {
+			return;
 		}
 
-		TrackedShot trackedShot = new TrackedShot(shot, target.getPosition(), arenaShotPos, hit, this.shotTime, missedPar );
-		trackedShots.add(trackedShot);
+		if (!event.inRound) {
+			logger.debug("count score is false!");
+		} else if (event.hit == null) {
+			logger.debug("hit is not present!");
+		} else {
+			logger.debug("Hit in region: x: {}, y: {}", event.hit.getImpactX(), event.hit.getImpactY());
+		}
 	}
 
-	private void displayResults(){
-		Platform.runLater(() -> {
-			double targetPosX = (super.getArenaWidth() / 2) - (target.getDimension().getWidth() / 2) - 50;
-			double targetPosY = (super.getArenaHeight() / 2) - (target.getDimension().getHeight() / 2) - 50;
-			target.setPosition(targetPosX, targetPosY);
-			target.setVisible(true);
+	/**
+	 * Scores a shot in lane mode against the target of the lane it belongs to. Shots outside the lane's
+	 * rounds are ignored.
+	 */
+	private void laneShot(DrillLane[] lanes, ArenaShot shot, Optional<Hit> hit, long shotNanos) {
+		final int laneIndex = DrillLane.route(laneKey, shot.getColor(), shot.getArenaX(), super.getArenaWidth(), lanes.length);
+		if (laneIndex == DrillLane.NO_LANE) {
+			return;
+		}
 
-			int numShots = 0;
-			float timeTotal = 0;
-			int numMisses = 0;
-			int numParMisses = 0;
-			int pointsTotal = 0;
-			float maxTime = 0;
-			float minTime = 1000;
-			float maxScore = 0;
-			float minScore = 1000;
-
-			Group canvasGroup = getArenaPane().getCanvasManager().getCanvasGroup();
-			for (TrackedShot trackedShot : trackedShots) {
-				logger.info(String.format("Shot %d: %.2f - par time = %.2f", numShots, trackedShot.getShotTime(), parTime));
-				numShots++;
-				if(trackedShot.getHit() == null && !trackedShot.isMissedPar()){
-					numMisses++;
-				}
-				if(trackedShot.isMissedPar()){
-					numParMisses++;
-				}
-				float shotTime = trackedShot.getShotTime();
-				timeTotal += shotTime;
-				minTime = Math.min(shotTime, minTime);
-				maxTime = Math.max(shotTime, maxTime);
-
-				int points = trackedShot.getPoints();
-				pointsTotal += points;
-				minScore = Math.min(points, minScore);
-				maxScore = Math.max(points, maxScore);
-
-				Point2D targetPos = target.getPosition();
-				Point2D shotTargetPos = trackedShot.getTargetPos();
-
-				double adjustedX = targetPos.getX() - shotTargetPos.getX() + trackedShot.getArenaShot().getArenaX();
-				double adjustedY = targetPos.getY() - shotTargetPos.getY() + trackedShot.getArenaShot().getArenaY();
-
-				int shotIdx = canvasGroup.getChildren().indexOf(trackedShot.getArenaShot().getMarker());
-				if (shotIdx != -1) {
-					Ellipse marker = (Ellipse) canvasGroup.getChildren().get(shotIdx);
-					marker.setCenterX(adjustedX);
-					marker.setCenterY(adjustedY);
-					marker.setVisible(true);
-				}
+		final DrillLane lane = lanes[laneIndex];
+		final ParDrillEngine laneEngine = lane.getEngine();
+		if (allLanesComplete(lanes) && laneEngine.takeShootToReset()) {
+			this.reset();
+			return;
+		}
+
+		final boolean inRound = laneEngine.shotFired(shotNanos, true);
+		metrics.shotReceived(laneEngine.getRound(), shotNanos - lane.getBeepNanos(), inRound);
+		if (!inRound) {
+			return;
+		}
+
+		// Only the lane's own target scores, a hit on a neighbour's target is a miss
+		final RoundTargets.Layout layout = lane.getTargets().getLayout();
+		final ScoringIndex index = scoringIndex;
+		final int slot = layout.targetAt(shot.getArenaX(), shot.getArenaY(), index, noShootIndex);
+		final boolean targetHit = hit.isPresent() && slot != TargetGrid.NO_TARGET;
+		final int region = targetHit ? layout.region(index, slot, shot.getArenaX(), shot.getArenaY()) : ScoringIndex.NO_REGION;
+		final int shotPoints;
+		if (region != ScoringIndex.NO_REGION) {
+			shotPoints = index.points(region);
+		} else {
+			shotPoints = targetHit ? getPoints(hit.get().getHitRegion()) : 0;
+		}
+
+		final float time = (float) ((shotNanos - lane.getBeepNanos()) / (double) TimeUnit.SECONDS.toNanos(1));
+		lane.getStatistics().add(time, shotPoints, targetHit, false);
+		lane.addPoints(shotPoints);
+
+		final double targetX = slot != TargetGrid.NO_TARGET ? layout.getX(slot) : lane.getOriginX();
+		final double targetY = slot != TargetGrid.NO_TARGET ? layout.getY(slot) : 0;
+		final int markerSlot = shotStore.record(time, shot.getArenaX(), shot.getArenaY(), targetX, targetY, shotPoints,
+				laneEngine.getRound(), slot, targetHit ? ShotStore.FLAG_HIT : 0);
+		markerRegistry.register(markerSlot, shot.getMarker());
+		lane.addRoundMarker(markerSlot);
+		uiUpdateBus.markersChanged();
+
+		setLastTime(targetHit ? String.format("Lane %d: %d points   -  %.3f seconds", lane.getNumber() + 1, shotPoints, time)
+				: String.format("Lane %d: missed!", lane.getNumber() + 1));
+		uiUpdateBus.setFeedText(formatLaneScores(lanes));
+	}
+
+	private static String formatLaneScores(DrillLane[] lanes) {
+		final StringBuilder scores = new StringBuilder();
+		for (DrillLane lane : lanes) {
+			if (scores.length() > 0) {
+				scores.append('\n');
 			}
+			scores.append(String.format("Lane %d score: %d", lane.getNumber() + 1, lane.getScore()));
+		}
+		return scores.toString();
+	}
 
-			float avgTime = timeTotal / numShots;
-			float avgPoints = (float)pointsTotal / numShots;
+	private void displayLaneResults() {
+		final DrillLane[] lanes = this.lanes;
+		if (!allLanesComplete(lanes)) {
+			return;
+		}
 
+		final StringBuilder results = new StringBuilder();
+		for (DrillLane lane : lanes) {
+			final DrillStatistics.Snapshot stats = lane.getStatistics().snapshot();
+			results.append(String.format("Lane %d\n  Total Points: %d\n  Average Time: %.3f\n  Times p50/p90 excl. par misses: %.3f/%.3f\n  Missed Shots: %d\n  Missed Par: %d\n",
+					lane.getNumber() + 1, stats.pointsTotal, stats.getAverageTime(), stats.timeP50, stats.timeP90, stats.misses,
+					stats.parMisses));
+		}
+		results.append(String.format("Drill seed: %d", engine.getPlan().getSeed()));
+		uiUpdateBus.setFeedText(results.toString());
 
-			logger.info(String.format("Total Points: %d, Total Time: %.2f; Average Points: %.3f; Average Time: %.3f; Missed Shots: %d; Missed Par: %d", pointsTotal, timeTotal, avgPoints, avgTime, numMisses, numParMisses));
-			String message = String.format("Total Shots: %d\nTotal Points: %d\nTotal Time: %.2f\nAverage Points: %.3f\nAverage Time: %.3f\nPoints min/max: %.2f/%.2f\nTimes min/max: %.3f/%.3f\nMissed Shots: %d\nMissed Par: %d", numShots, pointsTotal, timeTotal, avgPoints, avgTime, minScore, maxScore, minTime, maxTime, numMisses, numParMisses);
-			showTextOnFeed(message);
+		scheduler.schedule(this::hideLastTime, 1, TimeUnit.SECONDS);
+	}
 
-		});
+	private void showHistory() {
+		final SessionArchive archive = sessionArchive;
+		if (archive == null) {
+			return;
+		}
 
-		executorService.schedule(this::hideLastTime, 1, TimeUnit.SECONDS);
+		final StringBuilder history = new StringBuilder("Average time by par:");
+		for (Map.Entry<Float, Float> average : archive.getAverageTimeByPar().entrySet()) {
+			history.append(String.format("\n  %.2f s par: %.3f s", average.getKey(), average.getValue()));
+		}
+		history.append("\nMiss rate, last drills:");
+		for (float missRate : archive.getMissRateTrend(HISTORY_TREND_DRILLS)) {
+			history.append(String.format(" %.0f%%", missRate * 100));
+		}
+		uiUpdateBus.setFeedText(history.toString());
 	}
 
-	private void parMissed(){
-		Platform.runLater(() -> {
-			setShotTimerRowColor(Color.CORAL);
-			final long drawShotLength = (System.currentTimeMillis() - roundStartTime); // s
-			Shot fauxShot = new Shot(ShotColor.RED, -10.0,-10.0, drawShotLength);
-			this.getArenaPane().getCanvasManager().addShot(new DisplayShot(fauxShot, config.getMarkerRadius()), true);
+	private void openArchive() {
+		try {
+			sessionArchive = SessionArchive.open(ARCHIVE_DIR, ARCHIVE_NAME);
+		} catch (IOException e) {
+			logger.warn("Could not open the session archive, drills will not be archived", e);
+		}
+	}
 
-			ArenaShot fauxArenaShot = new ArenaShot(new DisplayShot(fauxShot, config.getMarkerRadius()));
- 			recordShot(fauxArenaShot, Optional.empty(), true);
-		});
+	private void archiveFailed(IOException e) {
+		logger.error("Session archive failed, archiving stopped", e);
+		closeArchive();
+	}
 
-		setLength();
-		setPoints(ShotColor.RED, "0");
-		setLastTime("Par missed!");
+	private void closeArchive() {
+		final SessionArchive archive = sessionArchive;
+		sessionArchive = null;
+		if (archive != null) {
+			try {
+				archive.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the session archive", e);
+			}
+		}
 	}
 
-	protected void checkDrillComplete(){
-		if(round >= roundLimit){
-			isDrillComplete = true;
-			repeatExercise = false;
+	/**
+	 * Starts a trace of the drill if the {@value #TRACE_DIR_PROPERTY} system property names a directory.
+	 * The trace of the previous drill is closed, finished or not. Lane drills are not traced.
+	 */
+	private void openTrace() {
+		closeTrace();
+		final String traceDir = System.getProperty(TRACE_DIR_PROPERTY);
+		if (traceDir == null || lanes.length > 0) {
+			return;
+		}
 
-			executorService.schedule(() -> {
-				//wait 4 seconds to reactivate shot detection
-				pauseShotDetection(false);
-				shootToReset = true;
-			}, 4, TimeUnit.SECONDS);
+		try {
+			final ShotTrace trace = ShotTrace.create(new File(traceDir), ARCHIVE_NAME + "-" + System.currentTimeMillis());
+			traceDrill(trace);
+			shotTrace = trace;
+		} catch (IOException e) {
+			logger.warn("Could not start the shot trace, the drill is not traced", e);
 		}
 	}
 
-	private void randomizeTargets(){
-		logger.info(String.format("Target dimensions: w: %.1f, h: %.1f", target.getDimension().getWidth(), target.getDimension().getHeight()));
-		final int maxX = (int) (super.getArenaWidth() - target.getDimension().getWidth() - 50);
-		final int x = new Random().nextInt(maxX);
+	/**
+	 * Records the settings and plan of the drill that is about to start.
+	 */
+	private void traceDrill(ShotTrace trace) throws IOException {
+		final DrillPlan plan = engine.getPlan();
+		final Dimension2D shootDimension = roundTargets.getDimension(false);
+		final Dimension2D noShootDimension = roundTargets.getDimension(true);
+		final Dimension2D largest = roundTargets.getMaxDimension();
+		trace.drill(plan.getSeed(), engine.getParTime(), engine.getDelayMin(), engine.getDelayMax(),
+				engine.getRoundLimit(), engine.getTargets(), engine.getNoShoots(), placementWidth, placementHeight,
+				Math.max(largest.getWidth(), largest.getHeight()), shootDimension.getWidth(),
+				shootDimension.getHeight(), noShootDimension.getWidth(), noShootDimension.getHeight());
+	}
+
+	/**
+	 * Starts the live event server if the {@value #LIVE_PORT_PROPERTY} system property gives a port. It
+	 * listens on every interface, so a tablet or scoreboard on the range network can follow the drill.
+	 * Lane drills are not published.
+	 */
+	private void openLiveEvents() {
+		final Integer port = Integer.getInteger(LIVE_PORT_PROPERTY);
+		if (port == null) {
+			return;
+		}
+
+		try {
+			liveEventServer = LiveEventServer.open(new InetSocketAddress(port),
+					new NamedThreadFactory("RandomTargetParDrill-live"));
+			logger.info("Publishing live events on port {}, path {}", liveEventServer.getPort(), LiveEventServer.PATH);
+		} catch (IOException e) {
+			logger.warn("Could not start the live event server, events are not published", e);
+		}
+	}
+
+	private void closeLiveEvents() {
+		final LiveEventServer live = liveEventServer;
+		liveEventServer = null;
+		if (live != null) {
+			live.close();
+		}
+	}
 
-		final int maxY = (int) (super.getArenaHeight() - target.getDimension().getHeight() - 50);
-		final int y = new Random().nextInt(maxY);
+	private void traceFailed(IOException e) {
+		logger.error("Shot trace failed, tracing stopped", e);
+		closeTrace();
+	}
+
+	private void closeTrace() {
+		final ShotTrace trace = shotTrace;
+		shotTrace = null;
+		if (trace != null) {
+			try {
+				trace.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the shot trace", e);
+			}
+		}
+	}
 
-		logger.info(String.format("Placing target at x: %d, y: %d", x, y));
-		target.setPosition(x, y);
+	private static int getPoints(TargetRegion region) {
+		if (region.tagExists("points")) {
+			return Integer.parseInt(region.getTag("points"));
+		}
+		return 0;
 	}
 
+	private void displayResults(){
+		final DrillStatistics.Snapshot stats = drillStatistics.snapshot();
+		final GroupStatistics.Snapshot group = groupStatistics.snapshot();
+		final ProgramSequencer sequencer = programSequencer;
+		String message = formatResults(stats, group, engine.getPlan().getSeed(), noShootHits, formatTargetHits());
+		if (sequencer != null) {
+			message += "\n" + sequencer.formatStages();
+		}
+		final String groupExportDir = System.getProperty(GROUP_EXPORT_DIR_PROPERTY);
+		if (groupExportDir != null) {
+			final long seed = engine.getPlan().getSeed();
+			scheduler.execute(() -> exportGroup(new File(groupExportDir), group, seed));
+		}
+
+		// With a program, the archive and the trace get the last stage here, the earlier ones got theirs as they completed
+		final DrillStatistics.Snapshot drill = sequencer != null ? sequencer.getStatistics(sequencer.getStage()) : stats;
+		final SessionArchive archive = sessionArchive;
+		if (archive != null) {
+			try {
+				archive.endDrill(drill.shots, drill.misses, drill.parMisses, drill.pointsTotal, (float) drill.timeTotal);
+			} catch (IOException e) {
+				archiveFailed(e);
+			}
+		}
+		final ShotTrace trace = shotTrace;
+		if (trace != null) {
+			try {
+				trace.results(drill, sequencer != null ? sequencer.getNoShootHits(sequencer.getStage()) : noShootHits);
+			} catch (IOException e) {
+				traceFailed(e);
+			}
+			closeTrace();
+		}
+		final LiveEventServer live = liveEventServer;
+		if (live != null) {
+			live.publish(LiveEvents.results(stats, noShootHits, engine.getPlan().getSeed()));
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format("Total Points: %d, Total Time: %.2f; Average Points: %.3f; Average Time: %.3f; Missed Shots: %d; Missed Par: %d",
+					stats.pointsTotal, stats.timeTotal, stats.getAveragePoints(), stats.getAverageTime(), stats.misses, stats.parMisses));
+		}
+
+		final Optional<Target> primary = roundTargets.getPrimary();
+		if (!primary.isPresent()) {
+			uiUpdateBus.setFeedText(message);
+			return;
+		}
+
+		final Target target = primary.get();
+		final Dimension2D dimension = target.getDimension();
+		final double targetPosX = (super.getArenaWidth() / 2) - (dimension.getWidth() / 2) - 50;
+		final double targetPosY = (super.getArenaHeight() / 2) - (dimension.getHeight() / 2) - 50;
+
+		// The shot group is drawn into one image instead of moving every shot's marker onto the target
+		final ResultsRenderer.Frame frame = resultsRenderer.render(shotStore, dimension.getWidth(), dimension.getHeight());
+		markerRegistry.setAllVisible(false);
+		runOnFxThread(() -> {
+			target.setPosition(targetPosX, targetPosY);
+			target.setVisible(true);
+			showResultsFrame(frame, targetPosX - ResultsRenderer.MARGIN, targetPosY - ResultsRenderer.MARGIN);
+		});
+		uiUpdateBus.markersChanged();
+		uiUpdateBus.setFeedText(message);
+
+		scheduler.schedule(this::hideLastTime, 1, TimeUnit.SECONDS);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Drill timing:\n{}", metrics.summary());
+		}
+	}
 
-	private void drawShot(ArenaShot shot){
+	/**
+	 * Posts work to the FX thread and records how long it waited in the queue.
+	 */
+	private void runOnFxThread(Runnable work) {
+		final long posted = System.nanoTime();
 		Platform.runLater(() -> {
-			Group canvasGroup = getArenaPane().getCanvasManager().getCanvasGroup();
-			int shotIdx = canvasGroup.getChildren().indexOf(shot.getMarker());
-			Ellipse marker = (Ellipse)getArenaPane().getCanvasManager().getCanvasGroup().getChildren().get(shotIdx);
-			marker.setVisible(true);
+			metrics.fxQueueDelay(System.nanoTime() - posted);
+			work.run();
 		});
 	}
 
-	private void hideShots(){
-		for (TrackedShot trackedShot : trackedShots) {
-			Group canvasGroup = getArenaPane().getCanvasManager().getCanvasGroup();
-			int shotIdx = canvasGroup.getChildren().indexOf(trackedShot.getArenaShot().getMarker());
-			if(shotIdx == -1){
-				continue;
+	private static String formatResults(DrillStatistics.Snapshot stats, GroupStatistics.Snapshot group, long seed,
+			int noShootHits, String targetHits) {
+		return String.format("Total Shots: %d\nTotal Points: %d\nTotal Time: %.2f\nAverage Points: %.3f\nAverage Time: %.3f\nPoints min/max: %d/%d\nTimes min/max: %.3f/%.3f\nTimes p50/p90/p99 excl. par misses: %.3f/%.3f/%.3f\nTime std dev: %.3f\nMissed Shots: %d\nMissed Par: %d\nNo-shoot hits: %d%s\n%s\nDrill seed: %d",
+				stats.shots, stats.pointsTotal, stats.timeTotal, stats.getAveragePoints(), stats.getAverageTime(), stats.minPoints, stats.maxPoints,
+				stats.minTime, stats.maxTime, stats.timeP50, stats.timeP90, stats.timeP99, stats.timeStdDev, stats.misses, stats.parMisses,
+				noShootHits, targetHits, group.format(), seed);
+	}
+
+	/**
+	 * Appends the drill's group geometry to a CSV file in the directory named by the
+	 * {@value #GROUP_EXPORT_DIR_PROPERTY} system property. Runs on a worker, off the drill's timing.
+	 */
+	private static void exportGroup(File directory, GroupStatistics.Snapshot group, long seed) {
+		final Path export = new File(directory, GROUP_EXPORT_NAME).toPath();
+		try {
+			final boolean created = !Files.exists(export);
+			if (created) {
+				Files.createDirectories(export.getParent());
 			}
-			Ellipse marker = (Ellipse)canvasGroup.getChildren().get(shotIdx);
-			marker.setVisible(false);
+			final String row = System.currentTimeMillis() + "," + seed + "," + group.toCsv() + "\n";
+			Files.write(export, ((created ? "time,seed," + GroupStatistics.Snapshot.csvHeader() + "\n" : "") + row)
+					.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			logger.warn("Could not export the shot group", e);
 		}
 	}
 
+	/**
+	 * @return the hits and average time per target slot, empty with a single target
+	 */
+	private String formatTargetHits() {
+		final int targets = engine.getTargets();
+		if (targets <= 1) {
+			return "";
+		}
+
+		final StringBuilder hits = new StringBuilder("\nHits by target:");
+		for (int slot = 0; slot < targets; slot++) {
+			final DrillStatistics.Snapshot stats = roundTargets.getStatistics(slot).snapshot();
+			hits.append(String.format("\n  %d: %d (%.3f s)", slot + 1, stats.shots - stats.misses - stats.parMisses,
+					stats.getAverageTime()));
+		}
+		return hits.toString();
+	}
+
+	/**
+	 * Publishes a par miss to the shot stages as a shot off the arena, so it is traced, recorded and shown
+	 * in order with the round's shots. Runs on the scheduler before the next round starts, so the time
+	 * is still measured from the missed round's beep.
+	 */
+	private void parMissed(int round, long parExpired){
+		final float time = shotClock.secondsSinceBeep(parExpired);
+		final long drawShotLength = TimeUnit.NANOSECONDS.toMillis(parExpired - roundStartNanos); // ms
+		final Shot fauxShot = new Shot(ShotColor.RED, -10.0,-10.0, drawShotLength);
+		final ArenaShot fauxArenaShot = new ArenaShot(new DisplayShot(fauxShot, config.getMarkerRadius()));
+		final RoundTargets.Layout layout = roundTargets.getLayout();
+
+		// Only plain stores between claim and publish, a claimed event that is never published stops the stages
+		final ShotPipeline.ShotEvent event = shotPipeline.claim();
+		if (event == null) {
+			logger.warn("Shot pipeline full, the par miss of round {} is not recorded", round);
+			return;
+		}
+		event.shot = fauxArenaShot;
+		event.shotNanos = parExpired;
+		event.parMissed = true;
+		event.round = round;
+		event.running = true;
+		event.time = time;
+		event.layout = layout;
+		shotPipeline.publish(event);
+	}
+
+	/**
+	 * The par miss counterpart of the scoring stage: everything is known, only the trace is left.
+	 */
+	private void traceParMiss(ShotPipeline.ShotEvent event) {
+		shotTime = event.time;
+		final ShotTrace trace = shotTrace;
+		if (trace != null) {
+			try {
+				trace.parMissed(event.round, event.shotNanos);
+			} catch (IOException e) {
+				traceFailed(e);
+			}
+		}
+	}
+
+	private void displayParMiss(ShotPipeline.ShotEvent event) {
+		final DisplayShot marker = new DisplayShot(event.shot, config.getMarkerRadius());
+		runOnFxThread(() -> {
+			setShotTimerRowColor(Color.CORAL);
+			this.getArenaPane().getCanvasManager().addShot(marker, true);
+		});
+
+		showLength(event.time);
+		setPoints(ShotColor.RED, 0);
+		setLastTime("Par missed!");
+	}
+
+	/**
+	 * Generates the placements and delays of the next drill. The seed is taken from the
+	 * {@value #SEED_PROPERTY} system property if it is set, which replays the same drill every time.
+	 */
+	private void planDrill() {
+		ensureTargets();
+		final Dimension2D largest = roundTargets.getMaxDimension();
+		final double targetWidth = largest.getWidth();
+		final double targetHeight = largest.getHeight();
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format("Target dimensions: w: %.1f, h: %.1f", targetWidth, targetHeight));
+		}
+		placementWidth = Math.max(0, super.getArenaWidth() - targetWidth - 50);
+		placementHeight = Math.max(0, super.getArenaHeight() - targetHeight - 50);
+
+		final long seed = Long.getLong(SEED_PROPERTY, seedSource.nextLong());
+		engine.newDrill(seed, placementWidth, placementHeight, Math.max(targetWidth, targetHeight));
+		logger.info("Drill seed: {}", seed);
+	}
+
+	private void placeTargets(int round, DrillPlan plan) {
+		roundTargets.place(plan, round - 1, 0, 0, placementWidth, placementHeight);
+		if (logger.isDebugEnabled()) {
+			final RoundTargets.Layout layout = roundTargets.getLayout();
+			for (int slot = 0; slot < layout.size(); slot++) {
+				logger.debug("Placing target {} at x: {}, y: {}", slot + 1, layout.getX(slot), layout.getY(slot));
+			}
+		}
+	}
+
+
+	private void hideShots(){
+		markerRegistry.setAllVisible(false);
+		uiUpdateBus.markersChanged();
+		runOnFxThread(() -> resultsView.setVisible(false));
+	}
+
+	/**
+	 * Copies a rendered results frame into the results image and shows it. Must be called on the FX
+	 * thread.
+	 */
+	private void showResultsFrame(ResultsRenderer.Frame frame, double x, double y) {
+		if (resultsImage == null || resultsImage.getWidth() != frame.width || resultsImage.getHeight() != frame.height) {
+			resultsImage = new WritableImage(frame.width, frame.height);
+			resultsView.setImage(resultsImage);
+		}
+
+		resultsImage.getPixelWriter().setPixels(0, 0, frame.width, frame.height, PixelFormat.getIntArgbInstance(),
+				frame.pixels, 0, frame.width);
+		resultsView.setLayoutX(x);
+		resultsView.setLayoutY(y);
+		resultsView.setVisible(true);
+		resultsView.toFront();
+	}
+
 	private void hideTarget(){
-		target.setVisible(false);
+		roundTargets.hideAll();
+		for (DrillLane lane : lanes) {
+			lane.getTargets().hideAll();
+		}
 	}
 
 	private void showTarget(){
-		target.setVisible(true);
+		roundTargets.show();
 	}
 
 	private void updateRoundLabel(){
-		String roundText = String.format("Round: %d/%d", round, roundLimit);
-		Platform.runLater(() -> roundLabel.setText(roundText));
+		final DrillLane[] lanes = this.lanes;
+		if (lanes.length == 0) {
+			String roundText = String.format("Round: %d/%d", engine.getRound(), engine.getRoundLimit());
+			final ProgramSequencer sequencer = programSequencer;
+			if (sequencer != null) {
+				roundText = String.format("Stage: %d/%d  %s", sequencer.getStage() + 1, sequencer.getProgram().size(),
+						roundText);
+			}
+			uiUpdateBus.setRoundText(roundText);
+			return;
+		}
+
+		final StringBuilder roundText = new StringBuilder("Round:");
+		for (DrillLane lane : lanes) {
+			roundText.append(String.format(" %d/%d", lane.getEngine().getRound(), lane.getEngine().getRoundLimit()));
+		}
+		uiUpdateBus.setRoundText(roundText.toString());
 	}
 
 	private void hideLastTime(){
-		Platform.runLater(()-> timeLabel.setVisible(false));
+		uiUpdateBus.hideTime();
 	}
 
 	private void setLastTime(String time){
-		Platform.runLater(() -> {
-			timeLabel.setText(time);
-			timeLabel.setVisible(true);
-		});
+		uiUpdateBus.setTimeText(time);
 	}
 
 	private void setResultsLabel(){
@@ -549,127 +1364,147 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 	}
 
 	private void startRoundTimer() {
-		beepTime = System.currentTimeMillis();
-		if(roundStartTime == 0) {
-			roundStartTime = beepTime;
+		beepNanos = shotClock.markBeep();
+		if(roundStartNanos == 0) {
+			roundStartNanos = beepNanos;
 		}
 	}
 
 	@Override
 	public void updatedDelayedStartInterval(int min, int max) {
-		delayMin = min;
-		delayMax = max;
+		engine.setDelayRange(min, max);
+		for (DrillLane lane : lanes) {
+			lane.getEngine().setDelayRange(min, max);
+		}
 	}
 
 	private void resetValues() {
-		shootToReset = false;
-		isDrillComplete = false;
-		repeatExercise = true;
-		roundStartTime = 0;
-		score = 0;
-		round = 0;
-		trackedShots.clear();
-
-		showTextOnFeed("Score: 0");
+		roundStartNanos = 0;
+		shotClock.reset();
+		score.set(0);
+		shotStore.clear();
+		markerRegistry.clear();
+		drillStatistics.clear();
+		groupStatistics.clear();
+		roundTargets.clearStatistics();
+		noShootHits = 0;
+
+		uiUpdateBus.setFeedText("Score: 0");
 		updateRoundLabel();
 		hideLastTime();
 		getParInterval(this);
+		final ProgramSequencer sequencer = programSequencer;
+		if (sequencer != null) {
+			sequencer.rewind();
+		} else {
+			planDrill();
+		}
+		buildLanes();
+		updateRoundLabel();
+		openTrace();
+
+		// The archive tracks a single shooter's history, lane drills are not archived
+		final SessionArchive archive = sessionArchive;
+		if (archive != null && lanes.length == 0) {
+			try {
+				archive.beginDrill(System.currentTimeMillis(), (float) engine.getParTime());
+			} catch (IOException e) {
+				archiveFailed(e);
+			}
+		}
 	}
 
-	private void setPoints(ShotColor shotColor, String points) {
-		setShotTimerColumnText(POINTS_COL_NAME, points);
+	private void setPoints(ShotColor shotColor, int points) {
+		setShotTimerColumnText(POINTS_COL_NAME, String.valueOf(points));
 
-		if (shotColor.equals(ShotColor.RED) || shotColor.equals(ShotColor.INFRARED)) {
-			score += Integer.parseInt(points);
-		}
+		final int total = shotColor.equals(ShotColor.RED) || shotColor.equals(ShotColor.INFRARED)
+				? score.addAndGet(points) : score.get();
+
+		String message = String.format("Score: %d", total);
+		uiUpdateBus.setFeedText(message);
 
-		String message = String.format("Score: %d", score);
-		showTextOnFeed(message);
+		final LiveEventServer live = liveEventServer;
+		if (live != null) {
+			live.publish(LiveEvents.score(total));
+		}
 	}
 
 	@Override
 	public void updatedParInterval(double parTime) {
-		this.parTime = parTime;
+		engine.setParTime(parTime);
+		for (DrillLane lane : lanes) {
+			lane.getEngine().setParTime(parTime);
+		}
 	}
 
 
 	@Override
 	public void targetUpdate(Target target, TargetChange change) {
 		Point2D pos = target.getPosition();
-		logger.info(String.format("Target position: x: %.1f, y: %.1f", pos.getX(), pos.getY()));
+		if (logger.isInfoEnabled()) {
+			logger.info(String.format("Target position: x: %.1f, y: %.1f", pos.getX(), pos.getY()));
+		}
 	}
 
 	private void addRoundLimitExcersizePane(){
-		LimitRoundsPane limitRoundsPane = new LimitRoundsPane(this);
+		LimitRoundsPane limitRoundsPane = new LimitRoundsPane(this, this, this);
 		this.addExercisePane(limitRoundsPane);
 	}
 
 	@Override
 	public void updateRoundLimit(Integer limit) {
-		this.roundLimit = limit;
+		engine.setRoundLimit(limit);
+		for (DrillLane lane : lanes) {
+			lane.getEngine().setRoundLimit(limit);
+		}
 	}
 
 	@Override
 	public int getRoundLimit() {
-		return this.roundLimit;
+		return engine.getRoundLimit();
 	}
 
-	private static class TrackedShot {
-		private ArenaShot arenaShot;
-		private Hit hit;
-		float shotTime;
-		Point2D arenaShotPos;
-		Point2D targetPos;
-		boolean missedPar;
-
-		public TrackedShot(ArenaShot arenaShot, Point2D targetPos, Point2D arenaShotPos, Hit hit, float shotTime, boolean missedPar) {
-			this.arenaShot = arenaShot;
-			this.hit = hit;
-			this.arenaShotPos = arenaShotPos;
-			this.targetPos = targetPos;
-			this.shotTime = shotTime;
-			this.missedPar = missedPar;
-		}
-
-		public ArenaShot getArenaShot() {
-			return arenaShot;
-		}
-
-		public float getShotTime() {
-			return shotTime;
-		}
+	@Override
+	public void updateTargetCount(int targets, int noShoots) {
+		final int shown = Math.max(1, Math.min(targets, RoundTargets.MAX_TARGETS));
+		engine.setTargets(shown, Math.max(0, Math.min(noShoots, shown - 1)));
+		ensureTargets();
+	}
 
-		public int getPoints() {
-			int points = 0;
-			if(hit != null) {
-				final TargetRegion r = hit.getHitRegion();
-				if (r.tagExists("points")) {
-					String pointsStr = r.getTag("points");
-					points = Integer.parseInt(pointsStr);
-				}
-			}
-			return points;
-		}
+	@Override
+	public int getTargetCount() {
+		return engine.getTargets();
+	}
 
-		public Hit getHit(){
-			return hit;
-		}
+	@Override
+	public int getNoShootCount() {
+		return engine.getNoShoots();
+	}
 
-		public Point2D getArenaShotPos() {
-			return arenaShotPos;
-		}
+	/**
+	 * Takes effect with the next drill.
+	 *
+	 * @param lanes the number of lanes, fewer than two runs the single drill
+	 */
+	@Override
+	public void updateLanes(int lanes, boolean byColor) {
+		laneKey = byColor ? DrillLane.LaneKey.COLOR : DrillLane.LaneKey.REGION;
+		// Only red and infrared shots are scored, so color keyed lanes are limited to two
+		laneCount = Math.max(0, Math.min(lanes, byColor ? 2 : DrillLane.MAX_LANES));
+	}
 
-		public Point2D getTargetPos() {
-			return targetPos;
-		}
+	@Override
+	public int getLanes() {
+		return laneCount;
+	}
 
-		public boolean isMissedPar() {
-			return missedPar;
-		}
+	@Override
+	public boolean isLaneByColor() {
+		return laneKey == DrillLane.LaneKey.COLOR;
 	}
 
 	private static class LimitRoundsPane extends GridPane {
-		public LimitRoundsPane(RoundLimitListener listener) {
+		public LimitRoundsPane(RoundLimitListener listener, TargetCountListener targetListener, LaneListener laneListener) {
 			getColumnConstraints().add(new ColumnConstraints(100));
 			setVgap(5);
 
@@ -694,6 +1529,56 @@ public class RandomTargetParDrill extends ProjectorTrainingExerciseBase implemen
 					}
 				}
 			});
+
+			addRow(4, new Label("Targets per round"));
+			final TextField targetsField = new TextField(String.valueOf(targetListener.getTargetCount()));
+			this.add(targetsField, 1, 4);
+
+			addRow(5, new Label("No-shoot targets"));
+			final TextField noShootsField = new TextField(String.valueOf(targetListener.getNoShootCount()));
+			this.add(noShootsField, 1, 5);
+
+			final Runnable updateTargets = () -> {
+				try {
+					targetListener.updateTargetCount(Integer.parseInt(targetsField.getText()),
+							noShootsField.getText().isEmpty() ? 0 : Integer.parseInt(noShootsField.getText()));
+				} catch (NumberFormatException e) {
+					return;
+				}
+			};
+			acceptDigits(targetsField, updateTargets);
+			acceptDigits(noShootsField, updateTargets);
+
+			addRow(6, new Label("Shooter lanes"));
+			final TextField lanesField = new TextField(String.valueOf(laneListener.getLanes()));
+			this.add(lanesField, 1, 6);
+
+			final CheckBox byColorBox = new CheckBox("Lanes by laser color");
+			byColorBox.setSelected(laneListener.isLaneByColor());
+			this.add(byColorBox, 0, 7, 2, 1);
+			this.add(new Label("Lane changes apply from the next reset."), 0, 8, 2, 1);
+
+			final Runnable updateLanes = () -> {
+				try {
+					laneListener.updateLanes(lanesField.getText().isEmpty() ? 0 : Integer.parseInt(lanesField.getText()),
+							byColorBox.isSelected());
+				} catch (NumberFormatException e) {
+					return;
+				}
+			};
+			acceptDigits(lanesField, updateLanes);
+			byColorBox.selectedProperty().addListener((observable, oldValue, newValue) -> updateLanes.run());
+		}
+
+		private static void acceptDigits(TextField field, Runnable onChange) {
+			field.textProperty().addListener((observable, oldValue, newValue) -> {
+				if (!newValue.matches("\\d*")) {
+					field.setText(oldValue);
+					field.positionCaret(field.getLength());
+				} else {
+					onChange.run();
+				}
+			});
 		}
 	}
 }
@@ -0,0 +1,201 @@
+package com.shootoff.plugins;
+
+import java.util.Arrays;
+
+/**
+ * Draws the results view of a drill into a pixel buffer: a density heatmap of the shot group, the
+ * outlines of the target's scoring regions and a dot per shot, positioned relative to the target the
+ * shot was attributed to.
+ *
+ * Everything is composed off the FX thread in ARGB ints, so the arena only uploads the finished frame
+ * into one image; however many shots were fired, the scene gains no nodes and the FX thread copies the
+ * same number of pixels. The heatmap is accumulated on a coarse grid with a small kernel per shot, and
+ * the region outlines are sampled from the {@link ScoringIndex} once per target size and reused. Only
+ * the latest {@value #MAX_DOTS} shots get a dot; beyond that the heatmap shows the group.
+ */
+class ResultsRenderer {
+	/** The frame extends this far around the target so shots just outside it are drawn. */
+	static final int MARGIN = 50;
+
+	private static final int HEAT_CELL = 8;
+	private static final int DOT_RADIUS = 3;
+	private static final int MAX_DOTS = 500;
+	private static final int OUTLINE_COLOR = 0xC0FFFFFF;
+	private static final int HIT_COLOR = 0xFF00E000;
+	private static final int MISS_COLOR = 0xFFFF3030;
+	private static final int NO_SHOOT_COLOR = 0xFFFF9000;
+	private static final int[] HEAT_RAMP = heatRamp();
+
+	private final ScoringIndex index;
+	private final Frame[] frames = new Frame[2];
+	private int nextFrame = 0;
+
+	private int outlineWidth = -1;
+	private int outlineHeight = -1;
+	private int[] outline;
+	private float[] heat;
+
+	/**
+	 * @param index the scoring index of the target, or null to draw no region outlines
+	 */
+	ResultsRenderer(ScoringIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * A rendered results view: {@code width} by {@code height} non-premultiplied ARGB pixels, row by row.
+	 * The target's top left corner is at ({@link #MARGIN}, {@link #MARGIN}).
+	 */
+	static final class Frame {
+		final int width;
+		final int height;
+		final int[] pixels;
+
+		private Frame(int width, int height) {
+			this.width = width;
+			this.height = height;
+			pixels = new int[width * height];
+		}
+	}
+
+	/**
+	 * Renders the shots of the store, skipping par misses. Frames are reused alternately, so a frame
+	 * stays valid until the second call after the one that returned it.
+	 */
+	synchronized Frame render(ShotStore shotStore, double targetWidth, double targetHeight) {
+		final int width = (int) Math.ceil(targetWidth) + 2 * MARGIN;
+		final int height = (int) Math.ceil(targetHeight) + 2 * MARGIN;
+		final Frame frame = frame(width, height);
+		final int columns = (width + HEAT_CELL - 1) / HEAT_CELL;
+		final int rows = (height + HEAT_CELL - 1) / HEAT_CELL;
+		if (heat == null || heat.length != columns * rows) {
+			heat = new float[columns * rows];
+		}
+		Arrays.fill(heat, 0);
+
+		final int shots = shotStore.size();
+		for (int i = 0; i < shots; i++) {
+			if (!shotStore.isMissedPar(i)) {
+				addHeat(columns, rows, x(shotStore, i), y(shotStore, i));
+			}
+		}
+
+		float maxHeat = 0;
+		for (float cell : heat) {
+			maxHeat = Math.max(maxHeat, cell);
+		}
+		final int[] outline = outline(width, height, targetWidth, targetHeight);
+		final int[] pixels = frame.pixels;
+		for (int y = 0; y < height; y++) {
+			final int row = y / HEAT_CELL * columns;
+			for (int x = 0; x < width; x++) {
+				final int p = y * width + x;
+				final float cell = heat[row + x / HEAT_CELL];
+				pixels[p] = outline[p] != 0 ? outline[p]
+						: cell > 0 ? HEAT_RAMP[(int) (cell / maxHeat * (HEAT_RAMP.length - 1))] : 0;
+			}
+		}
+
+		for (int i = Math.max(0, shots - MAX_DOTS); i < shots; i++) {
+			if (!shotStore.isMissedPar(i)) {
+				final int color = shotStore.isNoShoot(i) ? NO_SHOOT_COLOR : shotStore.isHit(i) ? HIT_COLOR : MISS_COLOR;
+				drawDot(frame, (int) x(shotStore, i), (int) y(shotStore, i), color);
+			}
+		}
+		return frame;
+	}
+
+	private static double x(ShotStore shotStore, int i) {
+		return shotStore.getArenaX(i) - shotStore.getTargetX(i) + MARGIN;
+	}
+
+	private static double y(ShotStore shotStore, int i) {
+		return shotStore.getArenaY(i) - shotStore.getTargetY(i) + MARGIN;
+	}
+
+	private Frame frame(int width, int height) {
+		Frame frame = frames[nextFrame];
+		if (frame == null || frame.width != width || frame.height != height) {
+			frame = new Frame(width, height);
+			frames[nextFrame] = frame;
+		}
+		nextFrame = (nextFrame + 1) % frames.length;
+		return frame;
+	}
+
+	/**
+	 * Spreads a shot over its heat cell and the eight around it.
+	 */
+	private void addHeat(int columns, int rows, double x, double y) {
+		final int column = (int) Math.floor(x / HEAT_CELL);
+		final int row = (int) Math.floor(y / HEAT_CELL);
+		for (int r = row - 1; r <= row + 1; r++) {
+			for (int c = column - 1; c <= column + 1; c++) {
+				if (r >= 0 && r < rows && c >= 0 && c < columns) {
+					heat[r * columns + c] += r == row && c == column ? 4 : r == row || c == column ? 2 : 1;
+				}
+			}
+		}
+	}
+
+	private static void drawDot(Frame frame, int centerX, int centerY, int color) {
+		for (int y = Math.max(0, centerY - DOT_RADIUS); y <= Math.min(frame.height - 1, centerY + DOT_RADIUS); y++) {
+			for (int x = Math.max(0, centerX - DOT_RADIUS); x <= Math.min(frame.width - 1, centerX + DOT_RADIUS); x++) {
+				final int dx = x - centerX;
+				final int dy = y - centerY;
+				if (dx * dx + dy * dy <= DOT_RADIUS * DOT_RADIUS) {
+					frame.pixels[y * frame.width + x] = color;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the region outlines for a frame of the given size, a pixel is set where the scoring region
+	 *         differs from the pixel to its left or above
+	 */
+	private int[] outline(int width, int height, double targetWidth, double targetHeight) {
+		if (outline != null && outlineWidth == width && outlineHeight == height) {
+			return outline;
+		}
+
+		outline = new int[width * height];
+		outlineWidth = width;
+		outlineHeight = height;
+		if (index == null) {
+			return outline;
+		}
+
+		final int[] above = new int[width];
+		Arrays.fill(above, ScoringIndex.NO_REGION);
+		for (int y = 0; y < height; y++) {
+			int left = ScoringIndex.NO_REGION;
+			final double targetY = index.toTargetY(y - MARGIN + 0.5, 0, targetHeight);
+			for (int x = 0; x < width; x++) {
+				final int region = index.region(index.toTargetX(x - MARGIN + 0.5, 0, targetWidth), targetY);
+				if (region != left || region != above[x]) {
+					outline[y * width + x] = OUTLINE_COLOR;
+				}
+				left = region;
+				above[x] = region;
+			}
+		}
+		return outline;
+	}
+
+	/**
+	 * @return colors from a faint blue for the sparsest cells to an opaque red for the densest
+	 */
+	private static int[] heatRamp() {
+		final int[] ramp = new int[256];
+		for (int i = 0; i < ramp.length; i++) {
+			final double t = i / (double) (ramp.length - 1);
+			final int alpha = (int) (64 + 160 * t);
+			final int red = (int) (255 * Math.min(1, 2 * t));
+			final int green = (int) (255 * Math.min(1, 2 - 2 * t) * Math.min(1, 2 * t));
+			final int blue = (int) (255 * Math.max(0, 1 - 2 * t));
+			ramp[i] = alpha << 24 | red << 16 | green << 8 | blue;
+		}
+		return ramp;
+	}
+}
@@ -0,0 +1,315 @@
+package com.shootoff.plugins;
+
+import com.shootoff.targets.Target;
+import javafx.geometry.Dimension2D;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The targets shown in a round. Shoot and no-shoot targets are created once into pools that grow to the
+ * largest count used, and each round takes its targets from the pools, places them as planned and
+ * indexes them in a {@link TargetGrid} so shots can be attributed without testing every target.
+ *
+ * The placement of the current round is published as a {@link Layout} whose placement never changes
+ * once published; the scoring thread reads it without locking while the next round is being placed.
+ * Only the layout's hit marks change, and only the scoring thread reads or writes them.
+ */
+class RoundTargets {
+	static final int MAX_TARGETS = 32;
+
+	private final Function<File, Optional<Target>> targetFactory;
+	private final File shootTargetFile;
+	private final File noShootTargetFile;
+	private final List<Target> shootPool = new ArrayList<>();
+	private final List<Target> noShootPool = new ArrayList<>();
+	private final List<Dimension2D> shootDimensions = new ArrayList<>();
+	private final List<Dimension2D> noShootDimensions = new ArrayList<>();
+	private final DrillStatistics[] statistics = new DrillStatistics[MAX_TARGETS];
+
+	private volatile Layout layout = new Layout(0);
+
+	/**
+	 * @param targetFactory adds a target from a target file to the arena
+	 */
+	RoundTargets(Function<File, Optional<Target>> targetFactory, File shootTargetFile, File noShootTargetFile) {
+		this.targetFactory = targetFactory;
+		this.shootTargetFile = shootTargetFile;
+		this.noShootTargetFile = noShootTargetFile;
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = new DrillStatistics();
+		}
+	}
+
+	/**
+	 * Creates hidden targets until the pools can supply the given counts.
+	 *
+	 * @return false if ShootOFF could not create a target
+	 */
+	synchronized boolean ensureCapacity(int shoots, int noShoots) {
+		return fill(shootPool, shootDimensions, shootTargetFile, shoots)
+				&& fill(noShootPool, noShootDimensions, noShootTargetFile, noShoots);
+	}
+
+	private boolean fill(List<Target> pool, List<Dimension2D> dimensions, File targetFile, int count) {
+		while (pool.size() < count) {
+			final Optional<Target> target = targetFactory.apply(targetFile);
+			if (!target.isPresent()) {
+				return false;
+			}
+			target.get().setVisible(false);
+			pool.add(target.get());
+			dimensions.add(target.get().getDimension());
+		}
+		return true;
+	}
+
+	/**
+	 * @return the first shoot target, used for the results display
+	 */
+	synchronized Optional<Target> getPrimary() {
+		return shootPool.isEmpty() ? Optional.empty() : Optional.of(shootPool.get(0));
+	}
+
+	/**
+	 * @return the largest width and height of any target a round can use
+	 */
+	synchronized Dimension2D getMaxDimension() {
+		double width = 0;
+		double height = 0;
+		for (Dimension2D dimension : shootDimensions) {
+			width = Math.max(width, dimension.getWidth());
+			height = Math.max(height, dimension.getHeight());
+		}
+		for (Dimension2D dimension : noShootDimensions) {
+			width = Math.max(width, dimension.getWidth());
+			height = Math.max(height, dimension.getHeight());
+		}
+		return new Dimension2D(width, height);
+	}
+
+	/**
+	 * @return the size of the pooled shoot or no-shoot targets, empty if there are none
+	 */
+	synchronized Dimension2D getDimension(boolean noShoot) {
+		final List<Dimension2D> dimensions = noShoot ? noShootDimensions : shootDimensions;
+		return dimensions.isEmpty() ? new Dimension2D(0, 0) : dimensions.get(0);
+	}
+
+	/**
+	 * Positions the round's targets as planned, still hidden, and publishes their layout.
+	 *
+	 * @param round the round's index in the plan
+	 * @param originX the left edge of the area the planned placements are fractions of
+	 * @param areaWidth the width of that area
+	 */
+	synchronized void place(DrillPlan plan, int round, double originX, double originY, double areaWidth,
+			double areaHeight) {
+		final Layout next = layout(plan, round, originX, originY, areaWidth, areaHeight, shootPool, shootDimensions,
+				noShootPool, noShootDimensions);
+		for (int slot = 0; slot < next.size; slot++) {
+			next.targets[slot].setPosition(next.x[slot], next.y[slot]);
+		}
+		layout = next;
+	}
+
+	/**
+	 * Lays out a round the way {@link #place} does, for targets of the given sizes that are not on an
+	 * arena. Used to score recorded shots without ShootOFF.
+	 */
+	static Layout layout(DrillPlan plan, int round, double originX, double originY, double areaWidth,
+			double areaHeight, Dimension2D shootDimension, Dimension2D noShootDimension) {
+		return layout(plan, round, originX, originY, areaWidth, areaHeight, Collections.nCopies(MAX_TARGETS, null),
+				Collections.nCopies(MAX_TARGETS, shootDimension), Collections.nCopies(MAX_TARGETS, null),
+				Collections.nCopies(MAX_TARGETS, noShootDimension));
+	}
+
+	private static Layout layout(DrillPlan plan, int round, double originX, double originY, double areaWidth,
+			double areaHeight, List<Target> shootPool, List<Dimension2D> shootDimensions, List<Target> noShootPool,
+			List<Dimension2D> noShootDimensions) {
+		final int count = Math.min(plan.getTargets(), MAX_TARGETS);
+		final Layout next = new Layout(count);
+		int shoots = 0;
+		int noShoots = 0;
+		for (int slot = 0; slot < count; slot++) {
+			final boolean noShoot = plan.isNoShoot(round, slot) && noShoots < noShootPool.size();
+			final int pooled = noShoot ? noShoots++ : shoots++;
+			if (!noShoot && pooled >= shootPool.size()) {
+				break;
+			}
+
+			final Target target = noShoot ? noShootPool.get(pooled) : shootPool.get(pooled);
+			final Dimension2D dimension = noShoot ? noShootDimensions.get(pooled) : shootDimensions.get(pooled);
+			next.add(target, noShoot, (int) (originX + plan.getX(round, slot) * areaWidth),
+					(int) (originY + plan.getY(round, slot) * areaHeight), dimension.getWidth(), dimension.getHeight());
+		}
+
+		next.index();
+		return next;
+	}
+
+	synchronized void show() {
+		final Layout current = layout;
+		for (int slot = 0; slot < current.size; slot++) {
+			current.targets[slot].setVisible(true);
+		}
+	}
+
+	synchronized void hideAll() {
+		for (Target target : shootPool) {
+			target.setVisible(false);
+		}
+		for (Target target : noShootPool) {
+			target.setVisible(false);
+		}
+	}
+
+	Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return the statistics of the shots attributed to the target in the given slot of the rounds
+	 */
+	DrillStatistics getStatistics(int slot) {
+		return statistics[slot];
+	}
+
+	void clearStatistics() {
+		for (DrillStatistics slotStatistics : statistics) {
+			slotStatistics.clear();
+		}
+	}
+
+	/**
+	 * Placement of one round's targets. Slots with a higher index are drawn on top. The placement is fixed
+	 * when the layout is published; the hit marks are confined to the thread scoring the round's shots.
+	 */
+	static final class Layout {
+		private final Target[] targets;
+		private final boolean[] noShoot;
+		private final double[] x;
+		private final double[] y;
+		private final double[] width;
+		private final double[] height;
+		// Confined to the scoring thread, like shootTargetsHit
+		private final boolean[] hit;
+		private int size = 0;
+		private int shootTargets = 0;
+		private int shootTargetsHit = 0;
+		private TargetGrid grid;
+
+		private Layout(int capacity) {
+			targets = new Target[capacity];
+			noShoot = new boolean[capacity];
+			x = new double[capacity];
+			y = new double[capacity];
+			width = new double[capacity];
+			height = new double[capacity];
+			hit = new boolean[capacity];
+		}
+
+		private void add(Target target, boolean isNoShoot, double targetX, double targetY, double targetWidth,
+				double targetHeight) {
+			targets[size] = target;
+			noShoot[size] = isNoShoot;
+			x[size] = targetX;
+			y[size] = targetY;
+			width[size] = targetWidth;
+			height[size] = targetHeight;
+			if (!isNoShoot) {
+				shootTargets++;
+			}
+			size++;
+		}
+
+		private void index() {
+			grid = TargetGrid.build(x, y, width, height, size);
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @return the slot of the topmost target whose bounds contain the arena point, or
+		 *         {@link TargetGrid#NO_TARGET}
+		 */
+		int targetAt(double arenaX, double arenaY) {
+			return grid == null ? TargetGrid.NO_TARGET : grid.targetAt(arenaX, arenaY);
+		}
+
+		/**
+		 * Like {@link #targetAt(double, double)}, but a target only takes the shot if the point is inside its
+		 * outline, so a shot in the corner of a round target's bounds falls through to a target beneath it.
+		 * Targets without an index are taken by their bounds.
+		 *
+		 * @return the slot of the topmost target the shot is on, or {@link TargetGrid#NO_TARGET}
+		 */
+		int targetAt(double arenaX, double arenaY, ScoringIndex scoringIndex, ScoringIndex noShootIndex) {
+			if (grid == null) {
+				return TargetGrid.NO_TARGET;
+			}
+
+			int slot = grid.targetAt(arenaX, arenaY);
+			while (slot != TargetGrid.NO_TARGET) {
+				final ScoringIndex index = noShoot[slot] ? noShootIndex : scoringIndex;
+				if (index == null || region(index, slot, arenaX, arenaY) != ScoringIndex.NO_REGION) {
+					return slot;
+				}
+				slot = grid.targetAt(arenaX, arenaY, slot);
+			}
+			return TargetGrid.NO_TARGET;
+		}
+
+		/**
+		 * @return the scoring region of the target in the slot at the arena point, or
+		 *         {@link ScoringIndex#NO_REGION} without an index or a target
+		 */
+		int region(ScoringIndex index, int slot, double arenaX, double arenaY) {
+			if (index == null || slot == TargetGrid.NO_TARGET) {
+				return ScoringIndex.NO_REGION;
+			}
+
+			return index.region(index.toTargetX(arenaX, x[slot], width[slot]),
+					index.toTargetY(arenaY, y[slot], height[slot]));
+		}
+
+		boolean isNoShoot(int slot) {
+			return noShoot[slot];
+		}
+
+		double getX(int slot) {
+			return x[slot];
+		}
+
+		double getY(int slot) {
+			return y[slot];
+		}
+
+		double getWidth(int slot) {
+			return width[slot];
+		}
+
+		double getHeight(int slot) {
+			return height[slot];
+		}
+
+		/**
+		 * Marks a shoot target as hit. Only called from the thread scoring the round's shots.
+		 *
+		 * @return true once every shoot target of the round has been hit
+		 */
+		boolean markHit(int slot) {
+			if (!noShoot[slot] && !hit[slot]) {
+				hit[slot] = true;
+				shootTargetsHit++;
+			}
+			return shootTargetsHit >= shootTargets;
+		}
+	}
+}
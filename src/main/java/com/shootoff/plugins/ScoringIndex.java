@@ -0,0 +1,360 @@
+package com.shootoff.plugins;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scoring lookup compiled once from a target file.
+ *
+ * Targets made only of circles sharing one center, stacked from the largest to the smallest (such as
+ * ISSF.target), are compiled into a radius-to-ring table: the distance from the center selects a bucket
+ * that holds the ring index directly. Any other target is rasterized into a grid of region ids at one
+ * cell per target unit, with the topmost region winning. Either way a lookup is constant time, touches
+ * no scene graph node and parses no tags, so it is safe to call from the camera thread.
+ *
+ * Coordinates passed to the lookups are in target file units, see {@link #toTargetX}.
+ */
+final class ScoringIndex {
+	static final int NO_REGION = -1;
+
+	private final double minX;
+	private final double minY;
+	private final double width;
+	private final double height;
+	private final int[] regionPoints;
+
+	// Concentric targets
+	private final double centerX;
+	private final double centerY;
+	private final double[] ringRadii;
+	private final int[] firstRingAtRadius;
+	private final double[] ringInnerRadii;
+
+	// Everything else
+	private final short[] raster;
+	private final int rasterWidth;
+	private final int rasterHeight;
+
+	private ScoringIndex(List<Shape> shapes) {
+		double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+		for (Shape shape : shapes) {
+			x0 = Math.min(x0, shape.minX);
+			y0 = Math.min(y0, shape.minY);
+			x1 = Math.max(x1, shape.maxX);
+			y1 = Math.max(y1, shape.maxY);
+		}
+		if (shapes.isEmpty()) {
+			x0 = y0 = x1 = y1 = 0;
+		}
+		minX = x0;
+		minY = y0;
+		width = x1 - x0;
+		height = y1 - y0;
+
+		if (isConcentric(shapes)) {
+			final Shape outer = shapes.get(0);
+			centerX = outer.centerX;
+			centerY = outer.centerY;
+
+			// Later shapes are on top; with decreasing radii the smallest circle containing a point wins
+			final int n = shapes.size();
+			ringRadii = new double[n];
+			regionPoints = new int[n];
+			for (int i = 0; i < n; i++) {
+				ringRadii[i] = shapes.get(n - 1 - i).radius;
+				regionPoints[i] = shapes.get(n - 1 - i).points;
+			}
+
+			ringInnerRadii = new double[n];
+			for (int i = 0; i < n; i++) {
+				double inner = 0;
+				for (int j = i - 1; j >= 0; j--) {
+					if (regionPoints[j] != regionPoints[i]) {
+						inner = ringRadii[j];
+						break;
+					}
+				}
+				ringInnerRadii[i] = inner;
+			}
+
+			firstRingAtRadius = new int[(int) Math.ceil(ringRadii[n - 1]) + 1];
+			int ring = 0;
+			for (int bucket = 0; bucket < firstRingAtRadius.length; bucket++) {
+				while (ring < n && ringRadii[ring] < bucket) {
+					ring++;
+				}
+				firstRingAtRadius[bucket] = ring;
+			}
+
+			raster = null;
+			rasterWidth = 0;
+			rasterHeight = 0;
+		} else {
+			centerX = 0;
+			centerY = 0;
+			ringRadii = null;
+			firstRingAtRadius = null;
+			ringInnerRadii = null;
+
+			regionPoints = new int[shapes.size()];
+			rasterWidth = (int) Math.ceil(width) + 1;
+			rasterHeight = (int) Math.ceil(height) + 1;
+			raster = new short[rasterWidth * rasterHeight];
+			Arrays.fill(raster, (short) NO_REGION);
+
+			for (int id = 0; id < shapes.size(); id++) {
+				final Shape shape = shapes.get(id);
+				regionPoints[id] = shape.points;
+
+				final int cx0 = Math.max(0, (int) Math.floor(shape.minX - minX));
+				final int cy0 = Math.max(0, (int) Math.floor(shape.minY - minY));
+				final int cx1 = Math.min(rasterWidth - 1, (int) Math.ceil(shape.maxX - minX));
+				final int cy1 = Math.min(rasterHeight - 1, (int) Math.ceil(shape.maxY - minY));
+				for (int cy = cy0; cy <= cy1; cy++) {
+					for (int cx = cx0; cx <= cx1; cx++) {
+						if (shape.contains(minX + cx + 0.5, minY + cy + 0.5)) {
+							raster[cy * rasterWidth + cx] = (short) id;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isConcentric(List<Shape> shapes) {
+		if (shapes.isEmpty()) {
+			return false;
+		}
+
+		final Shape outer = shapes.get(0);
+		double lastRadius = Double.MAX_VALUE;
+		for (Shape shape : shapes) {
+			if (!shape.isCircle() || shape.centerX != outer.centerX || shape.centerY != outer.centerY
+					|| shape.radius > lastRadius) {
+				return false;
+			}
+			lastRadius = shape.radius;
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles the scoring index for a ShootOFF target file. Regions without a points tag score zero.
+	 */
+	static ScoringIndex compile(InputStream targetFile) throws IOException {
+		final Document document;
+		try {
+			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			document = factory.newDocumentBuilder().parse(targetFile);
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Cannot parse target file", e);
+		}
+
+		final List<Shape> shapes = new ArrayList<>();
+		final NodeList children = document.getDocumentElement().getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			final Node node = children.item(i);
+			if (node instanceof Element) {
+				final Shape shape = Shape.parse((Element) node);
+				if (shape != null) {
+					shapes.add(shape);
+				}
+			}
+		}
+
+		return new ScoringIndex(shapes);
+	}
+
+	boolean isConcentric() {
+		return ringRadii != null;
+	}
+
+	double getWidth() {
+		return width;
+	}
+
+	double getHeight() {
+		return height;
+	}
+
+	/**
+	 * Converts an arena x coordinate to target units for a target placed at {@code targetX} and drawn
+	 * {@code targetWidth} wide.
+	 */
+	double toTargetX(double arenaX, double targetX, double targetWidth) {
+		return minX + (arenaX - targetX) * (width / targetWidth);
+	}
+
+	double toTargetY(double arenaY, double targetY, double targetHeight) {
+		return minY + (arenaY - targetY) * (height / targetHeight);
+	}
+
+	/**
+	 * @return the id of the topmost region containing the point, or {@link #NO_REGION}
+	 */
+	int region(double x, double y) {
+		if (ringRadii != null) {
+			final double dx = x - centerX;
+			final double dy = y - centerY;
+			final double r = Math.sqrt(dx * dx + dy * dy);
+			if (r >= firstRingAtRadius.length) {
+				return NO_REGION;
+			}
+
+			int ring = firstRingAtRadius[(int) r];
+			while (ring < ringRadii.length && ringRadii[ring] < r) {
+				ring++;
+			}
+			return ring < ringRadii.length ? ring : NO_REGION;
+		}
+
+		final int cx = (int) (x - minX);
+		final int cy = (int) (y - minY);
+		if (x < minX || y < minY || cx >= rasterWidth || cy >= rasterHeight) {
+			return NO_REGION;
+		}
+		return raster[cy * rasterWidth + cx];
+	}
+
+	int points(int region) {
+		return region == NO_REGION ? 0 : regionPoints[region];
+	}
+
+	/**
+	 * Decimal ring value in the style of ISSF decimal scoring: the integer ring plus tenths of the way
+	 * from its outer edge towards the next ring, capped at .9. Non-concentric targets have no decimal
+	 * part.
+	 */
+	float decimalScore(double x, double y) {
+		final int region = region(x, y);
+		if (region == NO_REGION) {
+			return 0;
+		}
+		if (ringRadii == null) {
+			return regionPoints[region];
+		}
+
+		int outer = region;
+		while (outer + 1 < ringRadii.length && regionPoints[outer + 1] == regionPoints[region]) {
+			outer++;
+		}
+
+		final double dx = x - centerX;
+		final double dy = y - centerY;
+		final double r = Math.sqrt(dx * dx + dy * dy);
+		final double outerRadius = ringRadii[outer];
+		final double ringWidth = outerRadius - ringInnerRadii[region];
+		final double tenths = ringWidth <= 0 ? 0 : Math.min(9, Math.floor((outerRadius - r) / ringWidth * 10));
+		return (float) (regionPoints[region] + tenths / 10);
+	}
+
+	private static final class Shape {
+		final double minX, minY, maxX, maxY;
+		final double centerX, centerY, radius;
+		final double radiusX, radiusY;
+		final double[] polygon;
+		final int points;
+
+		private Shape(double minX, double minY, double maxX, double maxY, double centerX, double centerY,
+				double radiusX, double radiusY, double[] polygon, int points) {
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.centerX = centerX;
+			this.centerY = centerY;
+			this.radiusX = radiusX;
+			this.radiusY = radiusY;
+			this.radius = radiusX;
+			this.polygon = polygon;
+			this.points = points;
+		}
+
+		static Shape parse(Element element) {
+			final int points = parsePoints(element);
+			switch (element.getTagName()) {
+			case "ellipse": {
+				final double cx = number(element, "centerX");
+				final double cy = number(element, "centerY");
+				final double rx = number(element, "radiusX");
+				final double ry = number(element, "radiusY");
+				return new Shape(cx - rx, cy - ry, cx + rx, cy + ry, cx, cy, rx, ry, null, points);
+			}
+			case "rectangle": {
+				final double x = number(element, "x");
+				final double y = number(element, "y");
+				final double w = number(element, "width");
+				final double h = number(element, "height");
+				return new Shape(x, y, x + w, y + h, 0, 0, 0, 0,
+						new double[] { x, y, x + w, y, x + w, y + h, x, y + h }, points);
+			}
+			case "polygon": {
+				final String[] values = element.getAttribute("points").split("[,\\s]+");
+				final double[] polygon = new double[values.length & ~1];
+				double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+				for (int i = 0; i < polygon.length; i += 2) {
+					polygon[i] = Double.parseDouble(values[i]);
+					polygon[i + 1] = Double.parseDouble(values[i + 1]);
+					x0 = Math.min(x0, polygon[i]);
+					y0 = Math.min(y0, polygon[i + 1]);
+					x1 = Math.max(x1, polygon[i]);
+					y1 = Math.max(y1, polygon[i + 1]);
+				}
+				return polygon.length < 6 ? null : new Shape(x0, y0, x1, y1, 0, 0, 0, 0, polygon, points);
+			}
+			default:
+				// Images and other decorations are not scoring regions
+				return null;
+			}
+		}
+
+		private static double number(Element element, String attribute) {
+			return Double.parseDouble(element.getAttribute(attribute));
+		}
+
+		private static int parsePoints(Element element) {
+			final NodeList tags = element.getElementsByTagName("tag");
+			for (int i = 0; i < tags.getLength(); i++) {
+				final Element tag = (Element) tags.item(i);
+				if ("points".equals(tag.getAttribute("name"))) {
+					return Integer.parseInt(tag.getAttribute("value"));
+				}
+			}
+			return 0;
+		}
+
+		boolean isCircle() {
+			return polygon == null && radiusX == radiusY;
+		}
+
+		boolean contains(double x, double y) {
+			if (polygon == null) {
+				final double dx = (x - centerX) / radiusX;
+				final double dy = (y - centerY) / radiusY;
+				return dx * dx + dy * dy <= 1;
+			}
+
+			boolean inside = false;
+			for (int i = 0, j = polygon.length - 2; i < polygon.length; j = i, i += 2) {
+				final double xi = polygon[i], yi = polygon[i + 1];
+				final double xj = polygon[j], yj = polygon[j + 1];
+				if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+					inside = !inside;
+				}
+			}
+			return inside;
+		}
+	}
+}
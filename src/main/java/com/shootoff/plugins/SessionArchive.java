@@ -0,0 +1,334 @@
+package com.shootoff.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persistent archive of every drill, kept in two memory-mapped files.
+ *
+ * The log file is append-only and holds fixed size records: one per recorded shot and one summary per
+ * finished drill. The index file holds one fixed size entry per drill with its start time, par time,
+ * totals and the position of its first log record. History queries only read the index, so they stay
+ * fast no matter how many shots were archived; the log is read only when the shots of a single drill
+ * are needed.
+ *
+ * Appending writes into the mapped region without allocating. The mapping grows in fixed steps, and
+ * the committed length is stored in the file header after each record so a crash loses at most the
+ * record being written.
+ */
+class SessionArchive implements AutoCloseable {
+	private static final int LOG_MAGIC = 0x52545044; // RTPD
+	private static final int INDEX_MAGIC = 0x52545049; // RTPI
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 32;
+	private static final int INDEX_ENTRY_SIZE = 48;
+	private static final long GROWTH = 1 << 20;
+
+	static final byte RECORD_SHOT = 1;
+	static final byte RECORD_SUMMARY = 2;
+
+	static final int FLAG_HIT = 1;
+	static final int FLAG_MISSED_PAR = 1 << 1;
+	static final int FLAG_NO_SHOOT = 1 << 2;
+
+	private final FileChannel logChannel;
+	private final FileChannel indexChannel;
+	private MappedByteBuffer log;
+	private MappedByteBuffer index;
+	private long logLength;
+	private int drillCount;
+
+	private int currentDrill = -1;
+
+	private SessionArchive(FileChannel logChannel, FileChannel indexChannel) throws IOException {
+		this.logChannel = logChannel;
+		this.indexChannel = indexChannel;
+
+		log = map(logChannel, Math.max(logChannel.size(), GROWTH));
+		index = map(indexChannel, Math.max(indexChannel.size(), GROWTH / 16));
+
+		logLength = readHeader(log, LOG_MAGIC);
+		drillCount = (int) readHeader(index, INDEX_MAGIC);
+	}
+
+	static SessionArchive open(File directory, String name) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create archive directory " + directory);
+		}
+
+		final FileChannel logChannel = FileChannel.open(new File(directory, name + ".log").toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			final FileChannel indexChannel = FileChannel.open(new File(directory, name + ".idx").toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			return new SessionArchive(logChannel, indexChannel);
+		} catch (IOException e) {
+			logChannel.close();
+			throw e;
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+		final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static long readHeader(MappedByteBuffer buffer, int magic) throws IOException {
+		final int fileMagic = buffer.getInt(0);
+		if (fileMagic == 0) {
+			buffer.putInt(0, magic);
+			buffer.putInt(4, VERSION);
+			buffer.putLong(8, 0);
+			return 0;
+		}
+
+		if (fileMagic != magic || buffer.getInt(4) != VERSION) {
+			throw new IOException("Unrecognized session archive format");
+		}
+		return buffer.getLong(8);
+	}
+
+	/**
+	 * Starts a new drill; following shots are attributed to it.
+	 *
+	 * @return the id of the new drill
+	 */
+	synchronized int beginDrill(long startMillis, float parTime) throws IOException {
+		final int drill = drillCount;
+		final int entry = ensureIndexCapacity(drill);
+		index.putInt(entry, drill);
+		index.putInt(entry + 4, 0);
+		index.putLong(entry + 8, startMillis);
+		index.putFloat(entry + 16, parTime);
+		index.putInt(entry + 20, 0);
+		index.putInt(entry + 24, 0);
+		index.putInt(entry + 28, 0);
+		index.putInt(entry + 32, 0);
+		index.putFloat(entry + 36, 0);
+		index.putLong(entry + 40, logLength);
+
+		drillCount++;
+		index.putLong(8, drillCount);
+		currentDrill = drill;
+		return drill;
+	}
+
+	/**
+	 * @param offsetX the horizontal offset of the shot from the center of the target it was attributed to
+	 * @param target the slot of that target in its round; drills archived before multi-target rounds read
+	 *            as slot 0
+	 */
+	synchronized void appendShot(int round, float time, int points, float offsetX, float offsetY, int target,
+			int flags) throws IOException {
+		if (currentDrill < 0) {
+			return;
+		}
+
+		final int position = ensureLogCapacity();
+		log.put(position, RECORD_SHOT);
+		log.put(position + 1, (byte) flags);
+		log.putInt(position + 4, currentDrill);
+		log.putInt(position + 8, round);
+		log.putFloat(position + 12, time);
+		log.putInt(position + 16, points);
+		log.putFloat(position + 20, offsetX);
+		log.putFloat(position + 24, offsetY);
+		log.putInt(position + 28, target);
+		commitRecord();
+	}
+
+	/**
+	 * Writes the summary of the current drill to the log and to its index entry.
+	 */
+	synchronized void endDrill(int shots, int misses, int parMisses, int pointsTotal, float timeTotal)
+			throws IOException {
+		if (currentDrill < 0) {
+			return;
+		}
+
+		final int position = ensureLogCapacity();
+		log.put(position, RECORD_SUMMARY);
+		log.putInt(position + 4, currentDrill);
+		log.putInt(position + 8, shots);
+		log.putInt(position + 12, misses);
+		log.putInt(position + 16, parMisses);
+		log.putInt(position + 20, pointsTotal);
+		log.putFloat(position + 24, timeTotal);
+		commitRecord();
+
+		final int entry = indexEntry(currentDrill);
+		index.putInt(entry + 4, 1);
+		index.putInt(entry + 20, shots);
+		index.putInt(entry + 24, misses);
+		index.putInt(entry + 28, parMisses);
+		index.putInt(entry + 32, pointsTotal);
+		index.putFloat(entry + 36, timeTotal);
+		currentDrill = -1;
+	}
+
+	private void commitRecord() {
+		logLength += RECORD_SIZE;
+		log.putLong(8, logLength);
+	}
+
+	private int ensureLogCapacity() throws IOException {
+		final long position = HEADER_SIZE + logLength;
+		if (position + RECORD_SIZE > log.capacity()) {
+			if (position + RECORD_SIZE + GROWTH > Integer.MAX_VALUE) {
+				throw new IOException("Session archive is full");
+			}
+			log.force();
+			log = map(logChannel, log.capacity() + GROWTH);
+		}
+		return (int) position;
+	}
+
+	private static int indexEntry(int drill) {
+		return HEADER_SIZE + drill * INDEX_ENTRY_SIZE;
+	}
+
+	private int ensureIndexCapacity(int drill) throws IOException {
+		final int entry = indexEntry(drill);
+		if (entry + INDEX_ENTRY_SIZE > index.capacity()) {
+			index.force();
+			index = map(indexChannel, index.capacity() * 2L);
+		}
+		return entry;
+	}
+
+	synchronized int getDrillCount() {
+		return drillCount;
+	}
+
+	/**
+	 * @return the completed drills started within the given time range, oldest first
+	 */
+	synchronized List<DrillSummary> getDrills(long fromMillis, long toMillis) {
+		final List<DrillSummary> drills = new ArrayList<>();
+		for (int drill = 0; drill < drillCount; drill++) {
+			final int entry = indexEntry(drill);
+			final long start = index.getLong(entry + 8);
+			if (index.getInt(entry + 4) != 0 && start >= fromMillis && start < toMillis) {
+				drills.add(new DrillSummary(index, entry));
+			}
+		}
+		return drills;
+	}
+
+	/**
+	 * @return the average shot time of all completed drills, grouped by par time
+	 */
+	synchronized Map<Float, Float> getAverageTimeByPar() {
+		final Map<Float, double[]> totals = new TreeMap<>();
+		for (int drill = 0; drill < drillCount; drill++) {
+			final int entry = indexEntry(drill);
+			if (index.getInt(entry + 4) == 0) {
+				continue;
+			}
+
+			final double[] total = totals.computeIfAbsent(index.getFloat(entry + 16), (par) -> new double[2]);
+			total[0] += index.getFloat(entry + 36);
+			total[1] += index.getInt(entry + 20);
+		}
+
+		final Map<Float, Float> averages = new TreeMap<>();
+		for (Map.Entry<Float, double[]> total : totals.entrySet()) {
+			if (total.getValue()[1] > 0) {
+				averages.put(total.getKey(), (float) (total.getValue()[0] / total.getValue()[1]));
+			}
+		}
+		return averages;
+	}
+
+	/**
+	 * @return the share of shots that missed the target or the par time in each of the last
+	 *         {@code drills} completed drills, oldest first
+	 */
+	synchronized float[] getMissRateTrend(int drills) {
+		final float[] trend = new float[drills];
+		int found = 0;
+		for (int drill = drillCount - 1; drill >= 0 && found < drills; drill--) {
+			final int entry = indexEntry(drill);
+			final int shots = index.getInt(entry + 20);
+			if (index.getInt(entry + 4) == 0 || shots == 0) {
+				continue;
+			}
+
+			trend[drills - 1 - found] = (float) (index.getInt(entry + 24) + index.getInt(entry + 28)) / shots;
+			found++;
+		}
+
+		final float[] result = new float[found];
+		System.arraycopy(trend, drills - found, result, 0, found);
+		return result;
+	}
+
+	/**
+	 * Reads the shots of one drill from the log.
+	 */
+	synchronized void forEachShot(int drill, ShotVisitor visitor) {
+		if (drill < 0 || drill >= drillCount) {
+			return;
+		}
+
+		long position = HEADER_SIZE + index.getLong(indexEntry(drill) + 40);
+		final long end = HEADER_SIZE + logLength;
+		for (; position < end; position += RECORD_SIZE) {
+			final int record = (int) position;
+			if (log.getInt(record + 4) != drill) {
+				continue;
+			}
+			if (log.get(record) == RECORD_SUMMARY) {
+				return;
+			}
+
+			visitor.visit(log.getInt(record + 8), log.getFloat(record + 12), log.getInt(record + 16),
+					log.getFloat(record + 20), log.getFloat(record + 24), log.getInt(record + 28), log.get(record + 1));
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		log.force();
+		index.force();
+		logChannel.close();
+		indexChannel.close();
+	}
+
+	interface ShotVisitor {
+		void visit(int round, float time, int points, float offsetX, float offsetY, int target, int flags);
+	}
+
+	static class DrillSummary {
+		final int drill;
+		final long startMillis;
+		final float parTime;
+		final int shots;
+		final int misses;
+		final int parMisses;
+		final int pointsTotal;
+		final float timeTotal;
+
+		private DrillSummary(MappedByteBuffer index, int entry) {
+			drill = index.getInt(entry);
+			startMillis = index.getLong(entry + 8);
+			parTime = index.getFloat(entry + 16);
+			shots = index.getInt(entry + 20);
+			misses = index.getInt(entry + 24);
+			parMisses = index.getInt(entry + 28);
+			pointsTotal = index.getInt(entry + 32);
+			timeTotal = index.getFloat(entry + 36);
+		}
+	}
+}
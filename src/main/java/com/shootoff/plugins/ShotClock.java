@@ -0,0 +1,76 @@
+package com.shootoff.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monotonic drill clock based on {@link System#nanoTime()}.
+ *
+ * Shot times are measured from the moment the start beep actually leaves the speaker to the moment the
+ * camera captured the frame containing the shot. The beep onset is the time the cue was issued plus
+ * the calibrated audio latency. The capture time is recovered from the camera timestamp carried by the
+ * shot: the clock tracks the smallest observed difference between arrival time and camera timestamp,
+ * which is the camera-to-listener dispatch delay with the queueing jitter removed.
+ */
+class ShotClock {
+	private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final LatencyCalibration calibration;
+
+	private volatile long cameraOffset = Long.MAX_VALUE;
+	private volatile long beepOnset = 0;
+
+	ShotClock(LatencyCalibration calibration) {
+		this.calibration = calibration;
+	}
+
+	static long now() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Call right after the start beep has been issued.
+	 *
+	 * @return the estimated time the beep was heard
+	 */
+	long markBeep() {
+		beepOnset = now() + calibration.getAudioLatency();
+		return beepOnset;
+	}
+
+	/**
+	 * Converts a camera timestamp to the nanosecond clock. Must be called when the shot is delivered,
+	 * because the arrival time is used to refine the camera offset.
+	 *
+	 * @param cameraTimestamp the shot timestamp in milliseconds, or a value <= 0 if the shot has none
+	 * @return the estimated capture time of the shot
+	 */
+	long captureTime(long cameraTimestamp) {
+		final long arrival = now();
+		if (cameraTimestamp <= 0) {
+			return arrival;
+		}
+
+		final long cameraNanos = cameraTimestamp * NANOS_PER_MILLI;
+		final long offset = arrival - cameraNanos;
+		if (offset < cameraOffset) {
+			cameraOffset = offset;
+		}
+
+		return cameraNanos + cameraOffset;
+	}
+
+	/**
+	 * @return seconds elapsed between the beep onset and the given time
+	 */
+	float secondsSinceBeep(long time) {
+		return (float) ((time - beepOnset) / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+
+	/**
+	 * Forgets the learned camera offset. The camera clock can restart between drills.
+	 */
+	void reset() {
+		cameraOffset = Long.MAX_VALUE;
+		beepOnset = 0;
+	}
+}
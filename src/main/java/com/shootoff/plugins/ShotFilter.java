@@ -0,0 +1,88 @@
+package com.shootoff.plugins;
+
+import com.shootoff.camera.shot.ShotColor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges the detections of one trigger pull into one shot. A laser that stays on for a few frames, or a
+ * reflection, makes ShootOFF report several shots close together in time and place. A detection of the
+ * same color within the time window and the radius of a recent shot is suppressed and extends that
+ * shot's window, so a laser held on the target stays one shot however long it is held.
+ *
+ * The recent shots are kept in a fixed ring of {@value #RECENT_SHOTS} entries that is searched
+ * linearly, which costs a few comparisons per detection and allocates nothing. Only the thread
+ * delivering the shots calls {@link #accept(long, double, double, ShotColor)}.
+ */
+class ShotFilter {
+	static final int RECENT_SHOTS = 8;
+
+	private final long window;
+	private final double radius;
+	private final double radiusSquared;
+
+	private final long[] times = new long[RECENT_SHOTS];
+	private final double[] xs = new double[RECENT_SHOTS];
+	private final double[] ys = new double[RECENT_SHOTS];
+	private final ShotColor[] colors = new ShotColor[RECENT_SHOTS];
+	private int next = 0;
+
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * @param window how long after a detection another one can belong to the same shot, 0 turns the
+	 *            filter off
+	 * @param radius how far apart in arena pixels two detections of the same shot can be
+	 */
+	ShotFilter(long window, TimeUnit unit, double radius) {
+		this.window = unit.toNanos(window);
+		this.radius = radius;
+		radiusSquared = radius * radius;
+	}
+
+	/**
+	 * @param capturedAt the capture time of the detection in nanoseconds
+	 * @return true if the detection is a new shot, false if it was merged into a recent one
+	 */
+	boolean accept(long capturedAt, double x, double y, ShotColor color) {
+		if (window <= 0) {
+			accepted.incrementAndGet();
+			return true;
+		}
+
+		for (int i = 0; i < RECENT_SHOTS; i++) {
+			final double dx = x - xs[i];
+			final double dy = y - ys[i];
+			if (colors[i] == color && Math.abs(capturedAt - times[i]) <= window && dx * dx + dy * dy <= radiusSquared) {
+				times[i] = Math.max(times[i], capturedAt);
+				xs[i] = x;
+				ys[i] = y;
+				suppressed.incrementAndGet();
+				return false;
+			}
+		}
+
+		times[next] = capturedAt;
+		xs[next] = x;
+		ys[next] = y;
+		colors[next] = color;
+		next = (next + 1) % RECENT_SHOTS;
+		accepted.incrementAndGet();
+		return true;
+	}
+
+	long getAccepted() {
+		return accepted.get();
+	}
+
+	long getSuppressed() {
+		return suppressed.get();
+	}
+
+	String summary() {
+		return String.format("Shot filter: %d accepted, %d merged (%d ms, %.0f px)", getAccepted(), getSuppressed(),
+				TimeUnit.NANOSECONDS.toMillis(window), radius);
+	}
+}
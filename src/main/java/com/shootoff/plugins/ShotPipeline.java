@@ -0,0 +1,315 @@
+package com.shootoff.plugins;
+
+import com.shootoff.camera.shot.ArenaShot;
+import com.shootoff.targets.Hit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands shots from the camera thread to the exercise through a preallocated ring of events.
+ *
+ * The camera thread publishes the shots: it claims the next {@link ShotEvent}, fills in the shot and
+ * publishes it, which never allocates. The drill's timing thread publishes par misses the same way, so
+ * they are recorded in order with the shots. Producers claim their sequence with a compare-and-set and
+ * mark their slot when they publish; the stages see an event once it and every event before it are
+ * published, so no producer ever waits for another. Each {@link Stage} runs on its own thread and
+ * sees every event in order, and only after the stage before it is done with that event, so a stage can
+ * rely on what earlier stages wrote into the event. A slow stage only delays the stages after it; once
+ * the ring is full, new shots are dropped instead of stalling the camera. Dropped shots and shots whose
+ * last stage finished more than {@code LATE_THRESHOLD} after publication are counted.
+ */
+class ShotPipeline implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(ShotPipeline.class);
+
+	private static final int SPIN_TRIES = 100;
+	private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long LATE_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(50);
+
+	/**
+	 * One step of shot processing.
+	 */
+	interface Stage {
+		void onShot(ShotEvent event);
+	}
+
+	private final ShotEvent[] ring;
+	private final int mask;
+	// The last sequence handed to a producer, and the last one the stages may read
+	private final AtomicLong claimed = new AtomicLong(-1);
+	private final AtomicLong cursor = new AtomicLong(-1);
+	// The sequence last published in each slot
+	private final AtomicLongArray available;
+	private final StageRunner[] runners;
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong late = new AtomicLong();
+	private volatile long maxDelay = 0;
+
+	/**
+	 * @param capacity the number of events in the ring, a power of two
+	 * @param stages the stages in the order every event passes through them
+	 */
+	ShotPipeline(int capacity, ThreadFactory threadFactory, Stage... stages) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+		}
+
+		ring = new ShotEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new ShotEvent();
+		}
+		mask = capacity - 1;
+		available = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			available.set(i, -1);
+		}
+
+		runners = new StageRunner[stages.length];
+		for (int i = 0; i < stages.length; i++) {
+			runners[i] = new StageRunner(stages[i], i == 0 ? cursor : runners[i - 1].sequence, i == stages.length - 1);
+			if (i > 0) {
+				runners[i - 1].next = runners[i];
+			}
+		}
+		for (int i = 0; i < runners.length; i++) {
+			final Thread thread = threadFactory.newThread(runners[i]);
+			thread.setDaemon(true);
+			runners[i].thread = thread;
+		}
+	}
+
+	void start() {
+		for (StageRunner runner : runners) {
+			runner.thread.start();
+		}
+	}
+
+	/**
+	 * Claims the next event for the calling producer. An event returned must be published, or the stages
+	 * stop at it, so fill it in with what is already worked out.
+	 *
+	 * @return the event to fill in, or null if the ring is full and the shot is dropped
+	 */
+	ShotEvent claim() {
+		long current;
+		long next;
+		do {
+			current = claimed.get();
+			next = current + 1;
+			// The slot is free once the last stage is done with the event a full ring ago
+			if (next - ring.length > runners[runners.length - 1].sequence.get()) {
+				dropped.incrementAndGet();
+				return null;
+			}
+		} while (!claimed.compareAndSet(current, next));
+
+		final ShotEvent event = ring[(int) (next & mask)];
+		event.clear();
+		event.sequence = next;
+		return event;
+	}
+
+	/**
+	 * Publishes an event returned by {@link #claim()}. The stages see it once the events claimed before it
+	 * are published too.
+	 */
+	void publish(ShotEvent event) {
+		event.published = System.nanoTime();
+		available.set((int) (event.sequence & mask), event.sequence);
+
+		// Whichever producer publishes the last missing event moves the cursor over everything published
+		// after it; each marks its slot before reading the cursor, so one of them always sees the other
+		long current = cursor.get();
+		while (available.get((int) ((current + 1) & mask)) == current + 1) {
+			if (cursor.compareAndSet(current, current + 1)) {
+				current++;
+			} else {
+				current = cursor.get();
+			}
+		}
+		published.incrementAndGet();
+		runners[0].wake();
+	}
+
+	long getPublished() {
+		return published.get();
+	}
+
+	long getDropped() {
+		return dropped.get();
+	}
+
+	long getLate() {
+		return late.get();
+	}
+
+	String summary() {
+		return String.format("Shot pipeline: %d published, %d dropped, %d late, max delay %.3f ms", getPublished(),
+				getDropped(), getLate(), maxDelay / 1e6);
+	}
+
+	@Override
+	public void close() {
+		for (StageRunner runner : runners) {
+			runner.running = false;
+			LockSupport.unpark(runner.thread);
+		}
+	}
+
+	private final class StageRunner implements Runnable {
+		private final Stage stage;
+		private final AtomicLong barrier;
+		private final AtomicLong sequence = new AtomicLong(-1);
+		private final boolean last;
+		private StageRunner next;
+		private Thread thread;
+		private volatile boolean waiting = false;
+		private volatile boolean running = true;
+
+		private StageRunner(Stage stage, AtomicLong barrier, boolean last) {
+			this.stage = stage;
+			this.barrier = barrier;
+			this.last = last;
+		}
+
+		@Override
+		public void run() {
+			long processed = -1;
+			int idle = 0;
+			while (running) {
+				final long available = barrier.get();
+				if (available <= processed) {
+					idle = idle(processed, idle);
+					continue;
+				}
+
+				idle = 0;
+				for (long s = processed + 1; s <= available; s++) {
+					handle(ring[(int) (s & mask)]);
+				}
+				processed = available;
+				sequence.set(processed);
+				if (next != null) {
+					next.wake();
+				}
+			}
+		}
+
+		private void handle(ShotEvent event) {
+			try {
+				stage.onShot(event);
+			} catch (RuntimeException e) {
+				// One failing shot must not stop the stage
+				logger.error("Shot stage failed", e);
+			}
+
+			if (last) {
+				final long delay = System.nanoTime() - event.published;
+				if (delay > maxDelay) {
+					maxDelay = delay;
+				}
+				if (delay > LATE_THRESHOLD) {
+					late.incrementAndGet();
+				}
+			}
+		}
+
+		/**
+		 * Spins briefly for the next event, then parks until the stage before wakes it. Both sides write
+		 * their own flag or sequence before reading the other's, so no wakeup is lost; the park is still
+		 * bounded so a closed pipeline is noticed.
+		 */
+		private int idle(long processed, int idle) {
+			if (idle < SPIN_TRIES) {
+				Thread.yield();
+				return idle + 1;
+			}
+
+			waiting = true;
+			if (barrier.get() <= processed && running) {
+				LockSupport.parkNanos(this, MAX_PARK);
+			}
+			waiting = false;
+			return idle;
+		}
+
+		private void wake() {
+			if (waiting) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * A shot travelling through the pipeline. The producer fills in the shot; the stages add what
+	 * they work out for later stages. Events are reused, so no stage may keep a reference to one.
+	 */
+	static final class ShotEvent {
+		private long sequence;
+		private long published;
+
+		ArenaShot shot;
+		Hit hit;
+		long shotNanos;
+
+		boolean handled;
+		boolean running;
+		float time;
+		RoundTargets.Layout layout;
+		int target;
+		boolean noShoot;
+		int region;
+		int points;
+		boolean targetHit;
+		int round;
+		boolean inRound;
+		// Filled in completely by the producer: the round ended without a shot, shotNanos is the par expiry
+		boolean parMissed;
+
+		private void clear() {
+			shot = null;
+			hit = null;
+			shotNanos = 0;
+			handled = false;
+			running = false;
+			time = 0;
+			layout = null;
+			target = TargetGrid.NO_TARGET;
+			noShoot = false;
+			region = ScoringIndex.NO_REGION;
+			points = 0;
+			targetHit = false;
+			round = 0;
+			inRound = false;
+			parMissed = false;
+		}
+
+		/**
+		 * Attributes the shot at the arena point to the topmost target of the layout whose outline contains
+		 * it and scores it with that target's index. Without an index, or when the index finds no region for a hit, the points are left
+		 * at 0 for the caller to take from ShootOFF's hit region.
+		 *
+		 * @param hit whether ShootOFF reported a hit
+		 * @return true if the shot closes the round: a single target closes it on any shot, several only once
+		 *         every shoot target was hit
+		 */
+		boolean score(RoundTargets.Layout layout, ScoringIndex scoringIndex, ScoringIndex noShootIndex, double arenaX,
+				double arenaY, boolean hit) {
+			this.layout = layout;
+			target = layout.targetAt(arenaX, arenaY, scoringIndex, noShootIndex);
+			noShoot = target != TargetGrid.NO_TARGET && layout.isNoShoot(target);
+			final ScoringIndex index = noShoot ? noShootIndex : scoringIndex;
+			region = hit ? layout.region(index, target, arenaX, arenaY) : ScoringIndex.NO_REGION;
+			points = region != ScoringIndex.NO_REGION ? index.points(region) : 0;
+			targetHit = hit && !noShoot;
+			return layout.size() <= 1 || (targetHit && target != TargetGrid.NO_TARGET && layout.markHit(target));
+		}
+	}
+}
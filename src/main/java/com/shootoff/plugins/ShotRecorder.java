@@ -0,0 +1,78 @@
+package com.shootoff.plugins;
+
+import javafx.scene.shape.Ellipse;
+
+import java.io.IOException;
+
+/**
+ * Books a scored shot everywhere the drill keeps it: the {@link ShotStore}, the shot's marker, the drill,
+ * stage, target and group statistics and the session archive. This is the exercise's storing stage
+ * without ShootOFF's shot types, so the benchmarks time the same code the exercise runs. Only one thread
+ * records shots.
+ */
+class ShotRecorder {
+	private final ShotStore shotStore;
+	private final MarkerRegistry markerRegistry;
+	private final DrillStatistics drillStatistics;
+	private final GroupStatistics groupStatistics;
+	private final RoundTargets roundTargets;
+
+	ShotRecorder(ShotStore shotStore, MarkerRegistry markerRegistry, DrillStatistics drillStatistics,
+			GroupStatistics groupStatistics, RoundTargets roundTargets) {
+		this.shotStore = shotStore;
+		this.markerRegistry = markerRegistry;
+		this.drillStatistics = drillStatistics;
+		this.groupStatistics = groupStatistics;
+		this.roundTargets = roundTargets;
+	}
+
+	/**
+	 * Records a shot scored by {@link ShotPipeline.ShotEvent#score}. Positions of shots not attributed to a
+	 * target are kept relative to the round's first target.
+	 *
+	 * @param index the shoot target's scoring index, the group is kept in its units; null keeps arena pixels
+	 * @param sequencer the program's sequencer, null outside programs
+	 * @param archive the session archive, null when not archiving
+	 * @return the shot's slot in the store
+	 * @throws IOException if the archive failed; everything else is recorded by then
+	 */
+	int record(ShotPipeline.ShotEvent event, double arenaX, double arenaY, Ellipse marker, ScoringIndex index,
+			ProgramSequencer sequencer, SessionArchive archive) throws IOException {
+		final RoundTargets.Layout layout = event.layout;
+		final int target = event.target;
+		final int reference = target != TargetGrid.NO_TARGET ? target : 0;
+		final boolean placed = reference < layout.size();
+		final double targetX = placed ? layout.getX(reference) : 0;
+		final double targetY = placed ? layout.getY(reference) : 0;
+		final double targetWidth = placed ? layout.getWidth(reference) : 0;
+		final double targetHeight = placed ? layout.getHeight(reference) : 0;
+
+		final int flags = (event.targetHit ? ShotStore.FLAG_HIT : 0) | (event.parMissed ? ShotStore.FLAG_MISSED_PAR : 0)
+				| (event.noShoot ? ShotStore.FLAG_NO_SHOOT : 0);
+		final int slot = shotStore.record(event.time, arenaX, arenaY, targetX, targetY, event.points, event.round, target,
+				flags);
+		markerRegistry.register(slot, marker);
+		drillStatistics.add(event.time, event.points, event.targetHit, event.parMissed);
+		if (sequencer != null) {
+			sequencer.record(event.time, event.points, event.targetHit, event.parMissed, event.noShoot);
+		}
+		if (target != TargetGrid.NO_TARGET && !event.noShoot && !event.parMissed) {
+			// Target units, so the group does not depend on how large the target is projected
+			final double unitsX = index != null ? index.getWidth() / targetWidth : 1;
+			final double unitsY = index != null ? index.getHeight() / targetHeight : 1;
+			groupStatistics.add((arenaX - targetX - targetWidth / 2) * unitsX, (arenaY - targetY - targetHeight / 2) * unitsY,
+					event.points);
+		}
+		if (target != TargetGrid.NO_TARGET) {
+			roundTargets.getStatistics(target).add(event.time, event.points, event.targetHit, event.parMissed);
+		}
+
+		if (archive != null) {
+			archive.appendShot(event.round, event.time, event.points, (float) (arenaX - targetX - targetWidth / 2),
+					(float) (arenaY - targetY - targetHeight / 2), target,
+					(event.targetHit ? SessionArchive.FLAG_HIT : 0) | (event.parMissed ? SessionArchive.FLAG_MISSED_PAR : 0)
+							| (event.noShoot ? SessionArchive.FLAG_NO_SHOOT : 0));
+		}
+		return slot;
+	}
+}
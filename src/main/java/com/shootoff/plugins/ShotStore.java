@@ -0,0 +1,134 @@
+package com.shootoff.plugins;
+
+/**
+ * Preallocated, column oriented store for recorded shots.
+ *
+ * Every column is a primitive array sized once at construction, so recording a shot does not allocate.
+ * The store keeps at most {@code capacity} shots; once full, the oldest shot is overwritten. Shots are
+ * addressed by their position from the oldest retained shot, {@code 0 .. size() - 1}, or by the slot
+ * returned from {@link #record}, which stays stable until the shot is evicted.
+ */
+class ShotStore {
+	static final int FLAG_HIT = 1;
+	static final int FLAG_MISSED_PAR = 1 << 1;
+	static final int FLAG_NO_SHOOT = 1 << 2;
+
+	private final int capacity;
+	private final float[] times;
+	private final double[] arenaXs;
+	private final double[] arenaYs;
+	private final double[] targetXs;
+	private final double[] targetYs;
+	private final int[] points;
+	private final int[] rounds;
+	private final byte[] targets;
+	private final byte[] flags;
+
+	private int next = 0;
+	private volatile int size = 0;
+
+	ShotStore(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+
+		this.capacity = capacity;
+		times = new float[capacity];
+		arenaXs = new double[capacity];
+		arenaYs = new double[capacity];
+		targetXs = new double[capacity];
+		targetYs = new double[capacity];
+		points = new int[capacity];
+		rounds = new int[capacity];
+		targets = new byte[capacity];
+		flags = new byte[capacity];
+	}
+
+	/**
+	 * @param target the slot of the target the shot was attributed to in its round, -1 if none
+	 * @return the slot the shot was written to
+	 */
+	synchronized int record(float time, double arenaX, double arenaY, double targetX, double targetY,
+			int shotPoints, int round, int target, int shotFlags) {
+		final int slot = next;
+		times[slot] = time;
+		arenaXs[slot] = arenaX;
+		arenaYs[slot] = arenaY;
+		targetXs[slot] = targetX;
+		targetYs[slot] = targetY;
+		points[slot] = shotPoints;
+		rounds[slot] = round;
+		targets[slot] = (byte) target;
+		flags[slot] = (byte) shotFlags;
+
+		next = slot + 1 == capacity ? 0 : slot + 1;
+		if (size < capacity) {
+			size++;
+		}
+
+		return slot;
+	}
+
+	synchronized void clear() {
+		next = 0;
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	int getSlot(int index) {
+		final int first = size < capacity ? 0 : next;
+		final int slot = first + index;
+		return slot >= capacity ? slot - capacity : slot;
+	}
+
+	float getTime(int index) {
+		return times[getSlot(index)];
+	}
+
+	double getArenaX(int index) {
+		return arenaXs[getSlot(index)];
+	}
+
+	double getArenaY(int index) {
+		return arenaYs[getSlot(index)];
+	}
+
+	double getTargetX(int index) {
+		return targetXs[getSlot(index)];
+	}
+
+	double getTargetY(int index) {
+		return targetYs[getSlot(index)];
+	}
+
+	int getPoints(int index) {
+		return points[getSlot(index)];
+	}
+
+	int getRound(int index) {
+		return rounds[getSlot(index)];
+	}
+
+	int getTarget(int index) {
+		return targets[getSlot(index)];
+	}
+
+	boolean isHit(int index) {
+		return (flags[getSlot(index)] & FLAG_HIT) != 0;
+	}
+
+	boolean isMissedPar(int index) {
+		return (flags[getSlot(index)] & FLAG_MISSED_PAR) != 0;
+	}
+
+	boolean isNoShoot(int index) {
+		return (flags[getSlot(index)] & FLAG_NO_SHOOT) != 0;
+	}
+}
@@ -0,0 +1,226 @@
+package com.shootoff.plugins;
+
+import com.shootoff.camera.shot.ShotColor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary trace of everything that decides a drill's results: the drill settings and seed, the beep of
+ * every round, every shot as delivered by ShootOFF, every par miss and the final results.
+ *
+ * A trace is a header followed by records of {@value #RECORD_SIZE} bytes, only the drill record takes
+ * {@value #DRILL_RECORD_SIZE}. Times are raw {@link ShotClock} readings; a replay only uses their
+ * differences. Records are collected in a buffer and written when it fills up and when the drill ends,
+ * so recording a shot does no file access.
+ *
+ * Settings changed during a recorded drill are not traced, a replay of such a drill does not match.
+ */
+class ShotTrace implements AutoCloseable {
+	private static final int MAGIC = 0x52545054; // RTPT
+	private static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 8;
+	static final int RECORD_SIZE = 32;
+	static final int DRILL_RECORD_SIZE = 96;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	static final byte RECORD_DRILL = 1;
+	static final byte RECORD_ROUND = 2;
+	static final byte RECORD_SHOT = 3;
+	static final byte RECORD_PAR_MISSED = 4;
+	static final byte RECORD_RESULTS = 5;
+
+	static final int FLAG_HIT = 1;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private ShotTrace(FileChannel channel) {
+		this.channel = channel;
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+	}
+
+	/**
+	 * Creates a new trace file in the directory.
+	 */
+	static ShotTrace create(File directory, String name) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create trace directory " + directory);
+		}
+
+		return new ShotTrace(FileChannel.open(new File(directory, name + ".trace").toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.WRITE));
+	}
+
+	/**
+	 * @param placementWidth the width of the area the plan's placements are fractions of
+	 * @param minTravel the minimum travel the plan was generated with
+	 */
+	synchronized void drill(long seed, double parTime, int delayMin, int delayMax, int roundLimit, int targets,
+			int noShoots, double placementWidth, double placementHeight, double minTravel, double shootWidth,
+			double shootHeight, double noShootWidth, double noShootHeight) throws IOException {
+		final int position = reserve(DRILL_RECORD_SIZE);
+		buffer.put(position, RECORD_DRILL);
+		buffer.putInt(position + 4, roundLimit);
+		buffer.putLong(position + 8, seed);
+		buffer.putDouble(position + 16, parTime);
+		buffer.putInt(position + 24, delayMin);
+		buffer.putInt(position + 28, delayMax);
+		buffer.putInt(position + 32, targets);
+		buffer.putInt(position + 36, noShoots);
+		buffer.putDouble(position + 40, placementWidth);
+		buffer.putDouble(position + 48, placementHeight);
+		buffer.putDouble(position + 56, minTravel);
+		buffer.putDouble(position + 64, shootWidth);
+		buffer.putDouble(position + 72, shootHeight);
+		buffer.putDouble(position + 80, noShootWidth);
+		buffer.putDouble(position + 88, noShootHeight);
+	}
+
+	/**
+	 * @param startedAt the time the host was asked to start the round
+	 * @param beep the beep onset the host returned
+	 */
+	synchronized void round(int round, long startedAt, long beep) throws IOException {
+		final int position = reserve(RECORD_SIZE);
+		buffer.put(position, RECORD_ROUND);
+		buffer.putInt(position + 4, round);
+		buffer.putLong(position + 8, startedAt);
+		buffer.putLong(position + 16, beep);
+	}
+
+	/**
+	 * @param hitPoints the points tag of the region ShootOFF reported as hit, or 0
+	 */
+	synchronized void shot(long shotNanos, double arenaX, double arenaY, ShotColor color, boolean hit, int hitPoints)
+			throws IOException {
+		final int position = reserve(RECORD_SIZE);
+		buffer.put(position, RECORD_SHOT);
+		buffer.put(position + 1, (byte) color.ordinal());
+		buffer.put(position + 2, (byte) (hit ? FLAG_HIT : 0));
+		buffer.putInt(position + 4, hitPoints);
+		buffer.putLong(position + 8, shotNanos);
+		buffer.putDouble(position + 16, arenaX);
+		buffer.putDouble(position + 24, arenaY);
+	}
+
+	synchronized void parMissed(int round, long parExpired) throws IOException {
+		final int position = reserve(RECORD_SIZE);
+		buffer.put(position, RECORD_PAR_MISSED);
+		buffer.putInt(position + 4, round);
+		buffer.putLong(position + 8, parExpired);
+	}
+
+	/**
+	 * Records the results shown at the end of the drill and writes the trace out.
+	 */
+	synchronized void results(DrillStatistics.Snapshot stats, int noShootHits) throws IOException {
+		final int position = reserve(RECORD_SIZE);
+		buffer.put(position, RECORD_RESULTS);
+		buffer.putInt(position + 4, stats.shots);
+		buffer.putInt(position + 8, stats.misses);
+		buffer.putInt(position + 12, stats.parMisses);
+		buffer.putInt(position + 16, stats.pointsTotal);
+		buffer.putInt(position + 20, noShootHits);
+		buffer.putDouble(position + 24, stats.timeTotal);
+		flush();
+	}
+
+	private int reserve(int size) throws IOException {
+		if (buffer.remaining() < size) {
+			flush();
+		}
+		final int position = buffer.position();
+		buffer.position(position + size);
+		return position;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a trace written by {@link ShotTrace}.
+	 */
+	static void read(File file, Visitor visitor) throws IOException {
+		final ByteBuffer trace;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			trace = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			while (trace.hasRemaining() && channel.read(trace) >= 0) {
+				// Read the whole trace
+			}
+		}
+
+		if (trace.limit() < HEADER_SIZE || trace.getInt(0) != MAGIC || trace.getInt(4) != VERSION) {
+			throw new IOException("Unrecognized shot trace format");
+		}
+
+		int position = HEADER_SIZE;
+		while (position + RECORD_SIZE <= trace.limit()) {
+			switch (trace.get(position)) {
+			case RECORD_DRILL:
+				if (position + DRILL_RECORD_SIZE > trace.limit()) {
+					return;
+				}
+				visitor.drill(trace.getLong(position + 8), trace.getDouble(position + 16), trace.getInt(position + 24),
+						trace.getInt(position + 28), trace.getInt(position + 4), trace.getInt(position + 32),
+						trace.getInt(position + 36), trace.getDouble(position + 40), trace.getDouble(position + 48),
+						trace.getDouble(position + 56), trace.getDouble(position + 64), trace.getDouble(position + 72),
+						trace.getDouble(position + 80), trace.getDouble(position + 88));
+				position += DRILL_RECORD_SIZE;
+				continue;
+			case RECORD_ROUND:
+				visitor.round(trace.getInt(position + 4), trace.getLong(position + 8), trace.getLong(position + 16));
+				break;
+			case RECORD_SHOT:
+				visitor.shot(trace.getLong(position + 8), trace.getDouble(position + 16), trace.getDouble(position + 24),
+						ShotColor.values()[trace.get(position + 1)], (trace.get(position + 2) & FLAG_HIT) != 0,
+						trace.getInt(position + 4));
+				break;
+			case RECORD_PAR_MISSED:
+				visitor.parMissed(trace.getInt(position + 4), trace.getLong(position + 8));
+				break;
+			case RECORD_RESULTS:
+				visitor.results(trace.getInt(position + 4), trace.getInt(position + 8), trace.getInt(position + 12),
+						trace.getInt(position + 16), trace.getInt(position + 20), trace.getDouble(position + 24));
+				break;
+			default:
+				throw new IOException("Corrupt shot trace at " + position);
+			}
+			position += RECORD_SIZE;
+		}
+	}
+
+	interface Visitor {
+		void drill(long seed, double parTime, int delayMin, int delayMax, int roundLimit, int targets, int noShoots,
+				double placementWidth, double placementHeight, double minTravel, double shootWidth, double shootHeight,
+				double noShootWidth, double noShootHeight);
+
+		void round(int round, long startedAt, long beep);
+
+		void shot(long shotNanos, double arenaX, double arenaY, ShotColor color, boolean hit, int hitPoints);
+
+		void parMissed(int round, long parExpired);
+
+		void results(int shots, int misses, int parMisses, int pointsTotal, int noShootHits, double timeTotal);
+	}
+}
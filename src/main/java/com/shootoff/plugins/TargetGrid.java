@@ -0,0 +1,134 @@
+package com.shootoff.plugins;
+
+/**
+ * Spatial index of the targets shown in a round, used to attribute a shot to a target.
+ *
+ * The arena is divided into square cells about the size of the largest target, and every cell lists the
+ * targets whose bounds overlap it, so a target touches at most four cells. A lookup hashes the shot
+ * into its cell and tests only the few targets listed there, which keeps attribution constant time no
+ * matter how many targets are on screen. The index is immutable once built; a new one is built for
+ * every round and published as a whole.
+ */
+final class TargetGrid {
+	static final int NO_TARGET = -1;
+
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final int[] cellStart;
+	private final int[] cellTargets;
+	private final double[] minX;
+	private final double[] minY;
+	private final double[] maxX;
+	private final double[] maxY;
+
+	private TargetGrid(double cellSize, int columns, int rows, int[] cellStart, int[] cellTargets, double[] minX,
+			double[] minY, double[] maxX, double[] maxY) {
+		this.cellSize = cellSize;
+		this.columns = columns;
+		this.rows = rows;
+		this.cellStart = cellStart;
+		this.cellTargets = cellTargets;
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	/**
+	 * Indexes the targets' bounding boxes. Targets with a higher index are drawn on top of those with a
+	 * lower one.
+	 */
+	static TargetGrid build(double[] x, double[] y, double[] width, double[] height, int count) {
+		double largest = 1;
+		double extentX = 1;
+		double extentY = 1;
+		for (int i = 0; i < count; i++) {
+			largest = Math.max(largest, Math.max(width[i], height[i]));
+			extentX = Math.max(extentX, x[i] + width[i]);
+			extentY = Math.max(extentY, y[i] + height[i]);
+		}
+
+		final int columns = (int) (extentX / largest) + 1;
+		final int rows = (int) (extentY / largest) + 1;
+		final int[] cellStart = new int[columns * rows + 1];
+		final double[] minX = new double[count];
+		final double[] minY = new double[count];
+		final double[] maxX = new double[count];
+		final double[] maxY = new double[count];
+		for (int i = 0; i < count; i++) {
+			minX[i] = x[i];
+			minY[i] = y[i];
+			maxX[i] = x[i] + width[i];
+			maxY[i] = y[i] + height[i];
+		}
+
+		// Count the targets per cell, turn the counts into offsets, then fill the cells
+		for (int i = 0; i < count; i++) {
+			for (int r = cell(minY[i], largest, rows); r <= cell(maxY[i], largest, rows); r++) {
+				for (int c = cell(minX[i], largest, columns); c <= cell(maxX[i], largest, columns); c++) {
+					cellStart[r * columns + c + 1]++;
+				}
+			}
+		}
+		for (int cell = 0; cell < columns * rows; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+		}
+
+		final int[] filled = new int[columns * rows];
+		final int[] cellTargets = new int[cellStart[columns * rows]];
+		for (int i = 0; i < count; i++) {
+			for (int r = cell(minY[i], largest, rows); r <= cell(maxY[i], largest, rows); r++) {
+				for (int c = cell(minX[i], largest, columns); c <= cell(maxX[i], largest, columns); c++) {
+					final int cell = r * columns + c;
+					cellTargets[cellStart[cell] + filled[cell]++] = i;
+				}
+			}
+		}
+
+		return new TargetGrid(largest, columns, rows, cellStart, cellTargets, minX, minY, maxX, maxY);
+	}
+
+	private static int cell(double position, double cellSize, int cells) {
+		return Math.max(0, Math.min(cells - 1, (int) (position / cellSize)));
+	}
+
+	/**
+	 * @return the topmost target whose bounds contain the point, or {@link #NO_TARGET}
+	 */
+	int targetAt(double x, double y) {
+		return targetAt(x, y, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the next target under the point when the one above it turned out to be missed, such as a
+	 * round target whose bounds contain the point but not its outline.
+	 *
+	 * @param below only targets drawn beneath this one are considered
+	 * @return the topmost of those targets whose bounds contain the point, or {@link #NO_TARGET}
+	 */
+	int targetAt(double x, double y, int below) {
+		if (x < 0 || y < 0) {
+			return NO_TARGET;
+		}
+		final int column = (int) (x / cellSize);
+		final int row = (int) (y / cellSize);
+		if (column >= columns || row >= rows) {
+			return NO_TARGET;
+		}
+
+		final int cell = row * columns + column;
+		// Targets are listed in drawing order; search from the top
+		for (int i = cellStart[cell + 1] - 1; i >= cellStart[cell]; i--) {
+			final int target = cellTargets[i];
+			if (target < below && x >= minX[target] && x < maxX[target] && y >= minY[target] && y < maxY[target]) {
+				return target;
+			}
+		}
+		return NO_TARGET;
+	}
+
+	int size() {
+		return minX.length;
+	}
+}
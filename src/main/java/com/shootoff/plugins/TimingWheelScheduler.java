@@ -0,0 +1,338 @@
+package com.shootoff.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Long-lived drill scheduler built on a hashed timing wheel, living as long as the exercise.
+ *
+ * Timed tasks are hashed into one of {@value #WHEEL_SIZE} buckets of {@code 1 ms} by their deadline. A
+ * single wheel thread opens the bucket of the earliest pending tick when that tick begins, moves the
+ * tasks due in it into a small deadline-ordered queue and runs each of them on the wheel thread once its
+ * exact deadline is reached: it parks until shortly before the deadline and yields for the rest. Ticks
+ * without a task are skipped, so between tasks the thread stays parked, without any timeout while
+ * nothing is pending, and scheduling a task wakes it. Tasks with the same
+ * deadline run in the order they were scheduled, which the engine relies on when it hides a round's
+ * targets and starts the next round at the same instant. Tasks submitted with
+ * {@link #execute(Runnable)} run on a small worker pool instead, so long running work such as latency
+ * calibration never delays a deadline.
+ *
+ * Every task is tagged with the generation it was submitted in. {@link #cancelAll()} starts a new
+ * generation, which cancels all pending work of a drill at once; stale tasks are dropped when the wheel
+ * reaches them instead of being searched for. Work submitted by a running task inherits that task's
+ * generation, so a task that was already running when its drill was cancelled cannot schedule into the
+ * next drill. Threads are started on first use and reused across drills.
+ */
+class TimingWheelScheduler implements DrillScheduler, AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+	private static final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int WHEEL_SIZE = 512;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final long SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long NO_TICK = Long.MAX_VALUE;
+	private static final int DEFAULT_WORKERS = 2;
+	private static final long WORKER_KEEP_ALIVE = 60; // s
+
+	private final ThreadFactory threadFactory;
+	private final DrillMetrics metrics;
+	private final int workerCount;
+	private final long startTime = System.nanoTime();
+
+	private final WheelTask[] wheel = new WheelTask[WHEEL_SIZE];
+	private final PriorityQueue<WheelTask> due = new PriorityQueue<>();
+	private final ConcurrentLinkedQueue<WheelTask> submitted = new ConcurrentLinkedQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	// Generation of the task running on the current thread and whether one is running
+	private final ThreadLocal<int[]> runningGeneration = ThreadLocal.withInitial(() -> new int[2]);
+	// The first tick whose bucket was not opened yet, and the earliest tick of a task in the wheel
+	private long tick = 0;
+	private long earliestTick = NO_TICK;
+
+	private volatile int generation = 0;
+	private volatile boolean running = true;
+	private volatile Thread wheelThread;
+	private ExecutorService workers;
+
+	private volatile long lastLateness = 0;
+	private volatile long maxLateness = 0;
+
+	TimingWheelScheduler(ThreadFactory threadFactory, DrillMetrics metrics) {
+		this(threadFactory, metrics, DEFAULT_WORKERS);
+	}
+
+	/**
+	 * @param workers the size of the pool running untimed work
+	 */
+	TimingWheelScheduler(ThreadFactory threadFactory, DrillMetrics metrics, int workers) {
+		this.threadFactory = threadFactory;
+		this.metrics = metrics;
+		this.workerCount = workers;
+	}
+
+	@Override
+	public long now() {
+		return System.nanoTime();
+	}
+
+	@Override
+	public ScheduledTask scheduleAt(Runnable task, long deadline) {
+		final WheelTask scheduled = new WheelTask(task, deadline, submitGeneration(), sequence.getAndIncrement());
+		submitted.add(scheduled);
+		LockSupport.unpark(wheelThread());
+		return scheduled;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		final int submittedIn = submitGeneration();
+		workers().execute(() -> {
+			if (submittedIn == generation) {
+				runInGeneration(task, submittedIn);
+			}
+		});
+	}
+
+	private int submitGeneration() {
+		final int[] running = runningGeneration.get();
+		return running[1] != 0 ? running[0] : generation;
+	}
+
+	private void runInGeneration(Runnable task, int taskGeneration) {
+		final int[] running = runningGeneration.get();
+		running[0] = taskGeneration;
+		running[1] = 1;
+		try {
+			task.run();
+		} finally {
+			running[1] = 0;
+		}
+	}
+
+	/**
+	 * Cancels every task submitted so far, timed or not, without touching the tasks themselves.
+	 * Tasks already running are not interrupted.
+	 */
+	void cancelAll() {
+		generation++;
+	}
+
+	long getLastLateness() {
+		return lastLateness;
+	}
+
+	long getMaxLateness() {
+		return maxLateness;
+	}
+
+	@Override
+	public synchronized void close() {
+		running = false;
+		cancelAll();
+		if (wheelThread != null) {
+			LockSupport.unpark(wheelThread);
+		}
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	private Thread wheelThread() {
+		Thread thread = wheelThread;
+		if (thread == null) {
+			synchronized (this) {
+				thread = wheelThread;
+				if (thread == null && running) {
+					thread = threadFactory.newThread(this::runWheel);
+					thread.setDaemon(true);
+					wheelThread = thread;
+					thread.start();
+				}
+			}
+		}
+		return thread;
+	}
+
+	private synchronized ExecutorService workers() {
+		if (workers == null) {
+			final ThreadPoolExecutor pool = new ThreadPoolExecutor(workerCount, workerCount, WORKER_KEEP_ALIVE,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+			pool.allowCoreThreadTimeOut(true);
+			workers = pool;
+		}
+		return workers;
+	}
+
+	private long tickStart(long tick) {
+		return startTime + tick * TICK;
+	}
+
+	private void runWheel() {
+		while (running) {
+			transferSubmitted();
+
+			final long now = System.nanoTime();
+			final WheelTask next = due.peek();
+			if (next != null && next.deadline - now <= 0) {
+				due.poll();
+				run(next, now);
+				continue;
+			}
+
+			final boolean wheelPending = earliestTick != NO_TICK;
+			if (wheelPending && tickStart(earliestTick) - now <= 0) {
+				openBucket(earliestTick);
+				continue;
+			}
+
+			if (next != null && (!wheelPending || next.deadline - tickStart(earliestTick) < 0)) {
+				// Only a task's own deadline needs to be met exactly
+				final long remaining = next.deadline - now;
+				if (remaining > SPIN_THRESHOLD) {
+					LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD);
+				} else {
+					Thread.yield();
+				}
+			} else if (wheelPending) {
+				LockSupport.parkNanos(this, tickStart(earliestTick) - now);
+			} else {
+				LockSupport.park(this);
+			}
+		}
+
+		due.clear();
+		submitted.clear();
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = null;
+		}
+		earliestTick = NO_TICK;
+	}
+
+	/**
+	 * Hashes newly submitted tasks into the wheel. A task whose bucket was already opened goes straight
+	 * to the due queue.
+	 */
+	private void transferSubmitted() {
+		WheelTask task;
+		while ((task = submitted.poll()) != null) {
+			final long taskTick = Math.max(0, (task.deadline - startTime) / TICK);
+			if (taskTick < tick) {
+				due.add(task);
+				continue;
+			}
+
+			task.tick = taskTick;
+			final int bucket = (int) (taskTick & WHEEL_MASK);
+			task.next = wheel[bucket];
+			wheel[bucket] = task;
+			earliestTick = Math.min(earliestTick, taskTick);
+		}
+	}
+
+	/**
+	 * Opens the bucket of the given tick, the earliest one holding a task: tasks due in this tick move to
+	 * the due queue, stale and cancelled tasks are dropped and the rest wait for a later rotation. The
+	 * ticks skipped up to it had no task.
+	 */
+	private void openBucket(long opened) {
+		final int bucket = (int) (opened & WHEEL_MASK);
+		final int current = generation;
+		WheelTask kept = null;
+		WheelTask task = wheel[bucket];
+		while (task != null) {
+			final WheelTask next = task.next;
+			task.next = null;
+			if (task.cancelled || task.generation != current) {
+				task.done = true;
+			} else if (task.tick == opened) {
+				due.add(task);
+			} else {
+				task.next = kept;
+				kept = task;
+			}
+			task = next;
+		}
+		wheel[bucket] = kept;
+		tick = opened + 1;
+		earliestTick = findEarliestTick();
+	}
+
+	/**
+	 * Looks through the whole wheel, which holds no more than a drill's few pending tasks.
+	 */
+	private long findEarliestTick() {
+		long earliest = NO_TICK;
+		for (WheelTask bucket : wheel) {
+			for (WheelTask task = bucket; task != null; task = task.next) {
+				earliest = Math.min(earliest, task.tick);
+			}
+		}
+		return earliest;
+	}
+
+	private void run(WheelTask task, long now) {
+		if (task.cancelled || task.generation != generation) {
+			task.done = true;
+			return;
+		}
+
+		final long lateness = Math.max(0, now - task.deadline);
+		lastLateness = lateness;
+		if (lateness > maxLateness) {
+			maxLateness = lateness;
+		}
+		metrics.schedulingLateness(lateness);
+
+		task.done = true;
+		try {
+			runInGeneration(task.task, task.generation);
+		} catch (RuntimeException e) {
+			// A failing drill task must not stop the wheel
+			logger.error("Drill task failed", e);
+		}
+	}
+
+	private static final class WheelTask implements ScheduledTask, Comparable<WheelTask> {
+		private final Runnable task;
+		private final long deadline;
+		private final int generation;
+		private final long sequence;
+		// The tick of the bucket the task is hashed into
+		private long tick;
+		private WheelTask next;
+		private volatile boolean cancelled = false;
+		private volatile boolean done = false;
+
+		private WheelTask(Runnable task, long deadline, int generation, long sequence) {
+			this.task = task;
+			this.deadline = deadline;
+			this.generation = generation;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(WheelTask other) {
+			final int byDeadline = Long.compare(deadline - other.deadline, 0);
+			return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+		}
+
+		@Override
+		public boolean cancel() {
+			if (done) {
+				return false;
+			}
+			cancelled = true;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.shootoff.plugins;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces arena updates from the camera and scheduler threads into at most one application per pulse.
+ *
+ * Callers only store the latest desired state and set a dirty bit; nothing is posted to the FX event
+ * queue. An {@link AnimationTimer} picks up the dirty state on the next pulse and applies it, so a
+ * burst of shots results in one label update per frame instead of one FX event per change, and
+ * intermediate states that would be overwritten within the same frame are never rendered.
+ */
+class UiUpdateBus extends AnimationTimer {
+	private static final int ROUND_TEXT = 1;
+	private static final int TIME_TEXT = 1 << 1;
+	private static final int FEED_TEXT = 1 << 2;
+	private static final int MARKERS = 1 << 3;
+
+	private final Label roundLabel;
+	private final Label timeLabel;
+	private final Consumer<String> feedText;
+	private final MarkerRegistry markerRegistry;
+	private final DrillMetrics metrics;
+
+	private final AtomicInteger dirty = new AtomicInteger();
+	private volatile long dirtySince;
+	private volatile String pendingRoundText;
+	private volatile String pendingTimeText;
+	private volatile boolean pendingTimeVisible;
+	private volatile String pendingFeedText;
+
+	UiUpdateBus(Label roundLabel, Label timeLabel, Consumer<String> feedText, MarkerRegistry markerRegistry,
+			DrillMetrics metrics) {
+		this.roundLabel = roundLabel;
+		this.timeLabel = timeLabel;
+		this.feedText = feedText;
+		this.markerRegistry = markerRegistry;
+		this.metrics = metrics;
+	}
+
+	void setRoundText(String text) {
+		pendingRoundText = text;
+		markDirty(ROUND_TEXT);
+	}
+
+	void setTimeText(String text) {
+		pendingTimeText = text;
+		pendingTimeVisible = true;
+		markDirty(TIME_TEXT);
+	}
+
+	void hideTime() {
+		pendingTimeVisible = false;
+		markDirty(TIME_TEXT);
+	}
+
+	void setFeedText(String text) {
+		pendingFeedText = text;
+		markDirty(FEED_TEXT);
+	}
+
+	/**
+	 * Applies the changes queued in the {@link MarkerRegistry} on the next pulse.
+	 */
+	void markersChanged() {
+		markDirty(MARKERS);
+	}
+
+	private void markDirty(int bit) {
+		int current;
+		do {
+			current = dirty.get();
+			if ((current & bit) != 0) {
+				return;
+			}
+		} while (!dirty.compareAndSet(current, current | bit));
+
+		if (current == 0) {
+			dirtySince = System.nanoTime();
+		}
+	}
+
+	void startOnFxThread() {
+		Platform.runLater(this::start);
+	}
+
+	void stopOnFxThread() {
+		Platform.runLater(() -> {
+			stop();
+			handle(System.nanoTime());
+		});
+	}
+
+	@Override
+	public void handle(long now) {
+		if (dirty.get() == 0) {
+			return;
+		}
+
+		final int changes = dirty.getAndSet(0);
+		// The oldest change in this batch waited this long for a pulse
+		metrics.fxQueueDelay(System.nanoTime() - dirtySince);
+		if ((changes & ROUND_TEXT) != 0) {
+			roundLabel.setText(pendingRoundText);
+		}
+		if ((changes & TIME_TEXT) != 0) {
+			final String text = pendingTimeText;
+			if (text != null) {
+				timeLabel.setText(text);
+			}
+			timeLabel.setVisible(pendingTimeVisible);
+		}
+		if ((changes & FEED_TEXT) != 0) {
+			feedText.accept(pendingFeedText);
+		}
+		if ((changes & MARKERS) != 0) {
+			markerRegistry.apply();
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package com.shootoff.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs complete par drills headless on a virtual clock and checks the round bookkeeping of every drill:
+ * each round closes exactly once, either on a shot or on par expiry, no shot is accepted outside a round
+ * and the results are shown once at the end. With {@code --lag} every shot reaches the engine the given
+ * number of seconds after it was captured, which checks that shots are attributed by capture time.
+ * With {@code --program} every drill runs the stages of a drill program back to back instead. With
+ * {@code --interruptions} an operator interrupts every drill that many times at random moments, pausing
+ * and resuming it or resetting it like the exercise's buttons and shoot-to-reset do; the checks then
+ * apply to the run after the last reset.
+ *
+ * Usage: {@code gradle simulate -Psim.args="--drills 10000 --par 1.5 --reaction 1.2"}
+ */
+public class DrillSimulator {
+	private static final double ARENA_WIDTH = 1230;
+	private static final double ARENA_HEIGHT = 670;
+	private static final double MIN_TRAVEL = 200;
+	// Like the exercise, a resumed or reset drill starts with a delay
+	private static final int RESUME_DELAY = 5; // s
+
+	private int drills = 1000;
+	private int rounds = ParDrillEngine.DEFAULT_MAX_ROUNDS;
+	private double parTime = ParDrillEngine.DEFAULT_PAR_TIME;
+	private int delayMin = ParDrillEngine.DEFAULT_MIN_DELAY;
+	private int delayMax = ParDrillEngine.DEFAULT_MAX_DELAY;
+	private double reaction = 1.5;
+	private double sigma = 0.35;
+	private double hitProbability = 0.8;
+	private double noShotProbability = 0.05;
+	private double deliveryLag = 0;
+	private long seed = 1;
+	private DrillProgram program;
+	private int interruptions = 0;
+	private long pauses = 0;
+	private long resets = 0;
+	// Rounds of drill runs that were reset before they completed
+	private long abandonedRounds = 0;
+
+	private final DrillStatistics totals = new DrillStatistics();
+	private final List<String> violations = new ArrayList<>();
+
+	public static void main(String[] args) throws IOException {
+		final DrillSimulator simulator = new DrillSimulator();
+		simulator.parse(args);
+		System.exit(simulator.run() ? 0 : 1);
+	}
+
+	private void parse(String[] args) throws IOException {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String value = args[i + 1];
+			switch (args[i]) {
+			case "--drills":
+				drills = Integer.parseInt(value);
+				break;
+			case "--rounds":
+				rounds = Integer.parseInt(value);
+				break;
+			case "--par":
+				parTime = Double.parseDouble(value);
+				break;
+			case "--delay-min":
+				delayMin = Integer.parseInt(value);
+				break;
+			case "--delay-max":
+				delayMax = Integer.parseInt(value);
+				break;
+			case "--reaction":
+				reaction = Double.parseDouble(value);
+				break;
+			case "--sigma":
+				sigma = Double.parseDouble(value);
+				break;
+			case "--hit":
+				hitProbability = Double.parseDouble(value);
+				break;
+			case "--no-shot":
+				noShotProbability = Double.parseDouble(value);
+				break;
+			case "--lag":
+				deliveryLag = Double.parseDouble(value);
+				break;
+			case "--seed":
+				seed = Long.parseLong(value);
+				break;
+			case "--program":
+				program = DrillProgram.load(new File(value));
+				break;
+			case "--interruptions":
+				interruptions = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private boolean run() {
+		final Random random = new Random(seed);
+		final DrillMetrics metrics = new DrillMetrics();
+		final long started = System.nanoTime();
+		long virtualTime = 0;
+		long tasks = 0;
+		final int drillRounds = program != null ? program.getTotalRounds() : rounds;
+
+		for (int drill = 0; drill < drills; drill++) {
+			final VirtualScheduler scheduler = new VirtualScheduler(0);
+			final ShotStore shotStore = new ShotStore(drillRounds * 2);
+			final DrillStatistics drillStatistics = new DrillStatistics();
+			final HeadlessDrillHost host = new HeadlessDrillHost(scheduler,
+					new SyntheticShooter(random, reaction, sigma, hitProbability, noShotProbability), shotStore,
+					drillStatistics, (long) (deliveryLag * TimeUnit.SECONDS.toNanos(1)));
+			final ParDrillEngine engine = new ParDrillEngine(host, scheduler, metrics);
+			host.setEngine(engine);
+			final int[] stagesCompleted = new int[1];
+			final ProgramSequencer sequencer;
+			if (program != null) {
+				sequencer = new ProgramSequencer(program, engine, new ProgramSequencer.StageHost() {
+					@Override
+					public void planStage(int stage) {
+						engine.newDrill(random.nextLong(), ARENA_WIDTH, ARENA_HEIGHT, MIN_TRAVEL);
+					}
+
+					@Override
+					public void stageCompleted(int stage) {
+						if (stage != stagesCompleted[0]++) {
+							violation(-1, "stage %d completed out of order", stage);
+						}
+					}
+				});
+				sequencer.rewind();
+			} else {
+				sequencer = null;
+				engine.setParTime(parTime);
+				engine.setDelayRange(delayMin, delayMax);
+				engine.setRoundLimit(rounds);
+				engine.newDrill(random.nextLong(), ARENA_WIDTH, ARENA_HEIGHT, MIN_TRAVEL);
+			}
+
+			engine.start(0, TimeUnit.SECONDS);
+			new Operator(scheduler, engine, host, random, () -> {
+				// What the exercise's reset does: drop the drill's pending work and state, then start over
+				abandonedRounds += host.roundsStarted;
+				scheduler.clear();
+				engine.reset();
+				host.reset();
+				shotStore.clear();
+				drillStatistics.clear();
+				stagesCompleted[0] = 0;
+				if (sequencer != null) {
+					sequencer.rewind();
+				}
+				engine.start(RESUME_DELAY, TimeUnit.SECONDS);
+			}).next();
+			tasks += scheduler.runUntilIdle();
+			virtualTime += scheduler.now();
+
+			check(drill, host, drillStatistics.snapshot(), drillRounds);
+			if (program != null && stagesCompleted[0] != program.size() - 1) {
+				violation(drill, "completed %d of %d stages before the results", stagesCompleted[0], program.size() - 1);
+			}
+			for (int i = 0; i < shotStore.size(); i++) {
+				totals.add(shotStore.getTime(i), shotStore.getPoints(i), shotStore.isHit(i), shotStore.isMissedPar(i));
+			}
+		}
+
+		final double elapsed = (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+		final DrillStatistics.Snapshot stats = totals.snapshot();
+		System.out.println(String.format("%d drills, %d rounds, %d tasks in %.3f s (%.0f drills/s, %.0fx real time)",
+				drills, drills * drillRounds, tasks, elapsed, drills / elapsed,
+				virtualTime / (double) TimeUnit.SECONDS.toNanos(1) / elapsed));
+		System.out.println(String.format("Shots: %d, missed: %d, missed par: %d (%.1f%%)", stats.shots, stats.misses,
+				stats.parMisses, 100.0 * stats.parMisses / Math.max(1, stats.shots)));
+		System.out.println(String.format("Times avg: %.3f, p50/p90/p99 excl. par misses: %.3f/%.3f/%.3f, average points: %.3f",
+				stats.getAverageTime(), stats.timeP50, stats.timeP90, stats.timeP99, stats.getAveragePoints()));
+		if (interruptions > 0) {
+			System.out.println(String.format("Interruptions: %d pauses, %d resets, %d rounds reset", pauses, resets,
+					abandonedRounds));
+		}
+
+		// A shot delivered after the par expired still counts if it was captured before, so the round
+		// expired without being a par miss
+		if (metrics.getRoundsStarted() != (long) drills * drillRounds + abandonedRounds
+				|| metrics.getParExpiries() < stats.parMisses) {
+			violations.add(String.format("Metrics counted %d rounds and %d par expiries", metrics.getRoundsStarted(),
+					metrics.getParExpiries()));
+		}
+
+		for (String violation : violations) {
+			System.out.println(violation);
+		}
+		System.out.println(violations.isEmpty() ? "All drills consistent" : violations.size() + " violations");
+		return violations.isEmpty();
+	}
+
+	private void check(int drill, HeadlessDrillHost host, DrillStatistics.Snapshot stats, int drillRounds) {
+		if (host.roundsStarted != drillRounds) {
+			violation(drill, "started %d of %d rounds", host.roundsStarted, drillRounds);
+		}
+		if (host.roundsClosed != host.roundsStarted) {
+			violation(drill, "closed %d of %d rounds", host.roundsClosed, host.roundsStarted);
+		}
+		if (host.roundsOverlapping != 0 || host.roundsOutOfOrder != 0) {
+			violation(drill, "%d rounds started while another was open, %d out of order", host.roundsOverlapping,
+					host.roundsOutOfOrder);
+		}
+		if (host.shotsInRound + host.parMisses != host.roundsClosed) {
+			violation(drill, "%d shots and %d par misses for %d rounds", host.shotsInRound, host.parMisses,
+					host.roundsClosed);
+		}
+		// Shots delivered later than the engine waits for are rejected by design
+		if (host.shotsOutOfRound != 0 && deliveryLag * TimeUnit.SECONDS.toNanos(1) <= ParDrillEngine.SHOT_DELIVERY_GRACE) {
+			violation(drill, "%d shots accepted outside a round", host.shotsOutOfRound);
+		}
+		if (stats.parMisses != host.parMisses) {
+			violation(drill, "statistics count %d par misses, engine reported %d", stats.parMisses, host.parMisses);
+		}
+		final double maxParTime = program != null ? maxParTime(program) : parTime;
+		if (stats.shots > 0 && stats.maxTime > maxParTime + 1e-3) {
+			violation(drill, "shot time %.3f exceeds par %.3f", stats.maxTime, maxParTime);
+		}
+		if (host.results != 1) {
+			violation(drill, "results shown %d times", host.results);
+		}
+	}
+
+	private static double maxParTime(DrillProgram program) {
+		double parTime = 0;
+		for (int stage = 0; stage < program.size(); stage++) {
+			parTime = Math.max(parTime, program.getStage(stage).parTime);
+		}
+		return parTime;
+	}
+
+	/**
+	 * Interrupts a drill like an operator, at random moments that fall into every state of a round: the
+	 * make ready, the delay before the beep, the par window and the time between rounds or after the
+	 * results. An interruption either pauses the drill and resumes it a random time later, or resets it.
+	 */
+	private final class Operator {
+		private final VirtualScheduler scheduler;
+		private final ParDrillEngine engine;
+		private final HeadlessDrillHost host;
+		private final Random random;
+		private final Runnable reset;
+		private int remaining = interruptions;
+
+		private Operator(VirtualScheduler scheduler, ParDrillEngine engine, HeadlessDrillHost host, Random random,
+				Runnable reset) {
+			this.scheduler = scheduler;
+			this.engine = engine;
+			this.host = host;
+			this.random = random;
+			this.reset = reset;
+		}
+
+		private void next() {
+			if (remaining-- > 0) {
+				scheduler.scheduleAt(this::interrupt, scheduler.now() + randomNanos(delayMax + parTime));
+			}
+		}
+
+		private void interrupt() {
+			if (random.nextBoolean()) {
+				pauses++;
+				// The exercise also stops detecting shots until the next round starts
+				engine.pause();
+				host.setShotDetection(false);
+				scheduler.scheduleAt(() -> {
+					engine.start(RESUME_DELAY, TimeUnit.SECONDS);
+					next();
+				}, scheduler.now() + randomNanos(delayMax));
+			} else {
+				resets++;
+				// Clears the scheduler, so the next interruption is scheduled after it
+				reset.run();
+				next();
+			}
+		}
+
+		private long randomNanos(double maxSeconds) {
+			return (long) (random.nextDouble() * maxSeconds * TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+
+	private void violation(int drill, String format, Object... args) {
+		if (violations.size() < 20) {
+			violations.add("Drill " + drill + ": " + String.format(format, args));
+		} else if (violations.size() == 20) {
+			violations.add("...");
+		}
+	}
+}
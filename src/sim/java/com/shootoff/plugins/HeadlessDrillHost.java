@@ -0,0 +1,154 @@
+package com.shootoff.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the drill engine without ShootOFF: shots come from a {@link SyntheticShooter} on the virtual
+ * clock and are recorded the same way the exercise records them. Counts what happened so the
+ * simulator can check the engine's invariants.
+ *
+ * A shot is captured while detection is on and delivered to the engine a fixed lag later, like a
+ * camera frame that still has to be processed, so shots just before the par expiry arrive after it.
+ */
+class HeadlessDrillHost implements DrillHost {
+	private final VirtualScheduler scheduler;
+	private final SyntheticShooter shooter;
+	private final ShotStore shotStore;
+	private final DrillStatistics drillStatistics;
+	private final long deliveryLag;
+	private ParDrillEngine engine;
+
+	private boolean detectionEnabled = false;
+	private long beep = 0;
+
+	int roundsStarted = 0;
+	int roundsClosed = 0;
+	// Rounds started while the one before was still open, and rounds not numbered one after the other
+	int roundsOverlapping = 0;
+	int roundsOutOfOrder = 0;
+	private boolean roundOpen = false;
+	private int lastRound = 0;
+	int parMisses = 0;
+	int shotsInRound = 0;
+	int shotsOutOfRound = 0;
+	int results = 0;
+
+	HeadlessDrillHost(VirtualScheduler scheduler, SyntheticShooter shooter, ShotStore shotStore,
+			DrillStatistics drillStatistics, long deliveryLag) {
+		this.scheduler = scheduler;
+		this.shooter = shooter;
+		this.shotStore = shotStore;
+		this.drillStatistics = drillStatistics;
+		this.deliveryLag = deliveryLag;
+	}
+
+	void setEngine(ParDrillEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Forgets what happened so far, for a drill that is reset and starts over.
+	 */
+	void reset() {
+		detectionEnabled = false;
+		beep = 0;
+		roundsStarted = 0;
+		roundsClosed = 0;
+		roundsOverlapping = 0;
+		roundsOutOfOrder = 0;
+		roundOpen = false;
+		lastRound = 0;
+		parMisses = 0;
+		shotsInRound = 0;
+		shotsOutOfRound = 0;
+		results = 0;
+	}
+
+	@Override
+	public void makeReady() {
+		detectionEnabled = false;
+	}
+
+	@Override
+	public long startRound(int round, DrillPlan plan) {
+		roundsStarted++;
+		if (roundOpen) {
+			roundsOverlapping++;
+		}
+		roundOpen = true;
+		// Every stage of a program starts again at round 1
+		if (round != lastRound + 1 && round != 1) {
+			roundsOutOfOrder++;
+		}
+		lastRound = round;
+		beep = scheduler.now();
+
+		final long reaction = shooter.nextReaction();
+		if (reaction >= 0) {
+			scheduler.scheduleAt(() -> shotCaptured(round), beep + reaction);
+		}
+		return beep;
+	}
+
+	private void shotCaptured(int round) {
+		// The shooter only fires at the round that beeped for them; a slow reaction after it closed is no
+		// shot in the next round or at the results
+		if (!detectionEnabled || !engine.isRoundLive() || engine.getRound() != round) {
+			return;
+		}
+
+		final long capturedAt = scheduler.now();
+		final long roundBeep = beep;
+		scheduler.scheduleAt(() -> shotDelivered(round, capturedAt, roundBeep), capturedAt + deliveryLag);
+	}
+
+	private void shotDelivered(int round, long capturedAt, long roundBeep) {
+		final float time = seconds(capturedAt - roundBeep);
+		final boolean hit = shooter.nextHit();
+		final int points = hit ? shooter.nextPoints() : 0;
+		shotStore.record(time, 0, 0, 0, 0, points, round, 0, hit ? ShotStore.FLAG_HIT : 0);
+		drillStatistics.add(time, points, hit, false);
+
+		if (engine.shotFired(capturedAt, true)) {
+			shotsInRound++;
+		} else {
+			shotsOutOfRound++;
+		}
+	}
+
+	@Override
+	public void setShotDetection(boolean enabled) {
+		detectionEnabled = enabled;
+	}
+
+	@Override
+	public void parMissed(int round, long parExpired) {
+		parMisses++;
+		final float time = seconds(parExpired - beep);
+		shotStore.record(time, 0, 0, 0, 0, 0, round, -1, ShotStore.FLAG_MISSED_PAR);
+		drillStatistics.add(time, 0, false, true);
+	}
+
+	@Override
+	public void roundClosed(int round) {
+		roundsClosed++;
+		roundOpen = false;
+	}
+
+	@Override
+	public void prepareNextRound(boolean hadShot) {
+	}
+
+	@Override
+	public void hideTarget() {
+	}
+
+	@Override
+	public void showResults() {
+		results++;
+	}
+
+	private static float seconds(long nanos) {
+		return (float) (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+}
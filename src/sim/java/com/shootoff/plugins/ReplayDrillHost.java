@@ -0,0 +1,147 @@
+package com.shootoff.plugins;
+
+import javafx.geometry.Dimension2D;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the drill engine on the shots of a recorded drill. Every recorded shot is delivered at the same
+ * offset from its round's beep as in the recording and scored the way the exercise scores it, so the
+ * results of a faithful replay equal the recorded ones.
+ */
+class ReplayDrillHost implements DrillHost {
+	private final DrillScheduler scheduler;
+	private final TraceReplay.RecordedDrill drill;
+	private final ScoringIndex scoringIndex;
+	private final ScoringIndex noShootIndex;
+	private final Dimension2D shootDimension;
+	private final Dimension2D noShootDimension;
+	private final DrillStatistics drillStatistics = new DrillStatistics();
+	// Shots are delivered on the scheduler's thread only
+	private final ShotPipeline.ShotEvent scored = new ShotPipeline.ShotEvent();
+	private final CountDownLatch results = new CountDownLatch(1);
+	private ParDrillEngine engine;
+
+	private volatile long beep = 0;
+	private volatile RoundTargets.Layout layout;
+	private volatile float shotTime = 0;
+	private volatile int noShootHits = 0;
+	private volatile int shotsDelivered = 0;
+
+	ReplayDrillHost(DrillScheduler scheduler, TraceReplay.RecordedDrill drill, ScoringIndex scoringIndex,
+			ScoringIndex noShootIndex) {
+		this.scheduler = scheduler;
+		this.drill = drill;
+		this.scoringIndex = scoringIndex;
+		this.noShootIndex = noShootIndex;
+		shootDimension = new Dimension2D(drill.shootWidth, drill.shootHeight);
+		noShootDimension = new Dimension2D(drill.noShootWidth, drill.noShootHeight);
+	}
+
+	void setEngine(ParDrillEngine engine) {
+		this.engine = engine;
+	}
+
+	@Override
+	public void makeReady() {
+	}
+
+	@Override
+	public long startRound(int round, DrillPlan plan) {
+		final TraceReplay.RecordedRound recorded = drill.getRound(round);
+		final long roundBeep = scheduler.now() + (recorded != null ? recorded.beep - recorded.startedAt : 0);
+		beep = roundBeep;
+		layout = RoundTargets.layout(plan, round - 1, 0, 0, drill.placementWidth, drill.placementHeight, shootDimension,
+				noShootDimension);
+
+		if (recorded != null) {
+			for (TraceReplay.RecordedShot shot : recorded.shots) {
+				final long capturedAt = roundBeep + shot.shotNanos - recorded.beep;
+				scheduler.scheduleAt(() -> shotDelivered(shot, capturedAt), capturedAt);
+			}
+		}
+		return roundBeep;
+	}
+
+	/**
+	 * Scores the shot like the exercise's scoring stage does.
+	 */
+	private void shotDelivered(TraceReplay.RecordedShot shot, long capturedAt) {
+		shotsDelivered++;
+		if (engine.isRunning()) {
+			shotTime = seconds(capturedAt - beep);
+		}
+		if (engine.takeShootToReset()) {
+			return;
+		}
+
+		final ShotPipeline.ShotEvent event = scored;
+		final boolean closesRound = event.score(layout, scoringIndex, noShootIndex, shot.arenaX, shot.arenaY, shot.hit);
+		if (shot.hit && event.region == ScoringIndex.NO_REGION) {
+			event.points = shot.hitPoints;
+		}
+
+		engine.shotFired(capturedAt, closesRound);
+		drillStatistics.add(shotTime, event.points, event.targetHit, false);
+		if (event.noShoot) {
+			noShootHits++;
+		}
+	}
+
+	@Override
+	public void setShotDetection(boolean enabled) {
+	}
+
+	@Override
+	public void parMissed(int round, long parExpired) {
+		shotTime = seconds(parExpired - beep);
+		drillStatistics.add(shotTime, 0, false, true);
+	}
+
+	@Override
+	public void roundClosed(int round) {
+	}
+
+	@Override
+	public void prepareNextRound(boolean hadShot) {
+	}
+
+	@Override
+	public void hideTarget() {
+	}
+
+	@Override
+	public void showResults() {
+		results.countDown();
+	}
+
+	/**
+	 * Waits for the engine to show the results, for replays in real time.
+	 *
+	 * @return false if the results were not shown in time
+	 */
+	boolean awaitResults(long timeout, TimeUnit unit) throws InterruptedException {
+		return results.await(timeout, unit);
+	}
+
+	boolean hasResults() {
+		return results.getCount() == 0;
+	}
+
+	DrillStatistics.Snapshot getResults() {
+		return drillStatistics.snapshot();
+	}
+
+	int getNoShootHits() {
+		return noShootHits;
+	}
+
+	int getShotsDelivered() {
+		return shotsDelivered;
+	}
+
+	private static float seconds(long nanos) {
+		return (float) (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+}
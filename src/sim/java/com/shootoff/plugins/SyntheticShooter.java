@@ -0,0 +1,52 @@
+package com.shootoff.plugins;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shooter model for the simulator. Reaction times follow a lognormal distribution, which matches the
+ * long right tail of real draw times; a round can also pass without a shot or with a shot off the
+ * target.
+ */
+class SyntheticShooter {
+	private final Random random;
+	private final double mu;
+	private final double sigma;
+	private final double hitProbability;
+	private final double noShotProbability;
+
+	/**
+	 * @param medianReaction the median time from beep to shot in seconds
+	 * @param sigma the spread of the reaction time, as the standard deviation of its logarithm
+	 */
+	SyntheticShooter(Random random, double medianReaction, double sigma, double hitProbability,
+			double noShotProbability) {
+		this.random = random;
+		this.mu = Math.log(medianReaction);
+		this.sigma = sigma;
+		this.hitProbability = hitProbability;
+		this.noShotProbability = noShotProbability;
+	}
+
+	/**
+	 * @return the delay from the beep to the shot in nanoseconds, or -1 if the shooter does not fire
+	 */
+	long nextReaction() {
+		if (random.nextDouble() < noShotProbability) {
+			return -1;
+		}
+		final double seconds = Math.exp(mu + sigma * random.nextGaussian());
+		return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+	}
+
+	boolean nextHit() {
+		return random.nextDouble() < hitProbability;
+	}
+
+	/**
+	 * @return points for a hit, weighted towards the center rings
+	 */
+	int nextPoints() {
+		return 10 - Math.min(9, (int) Math.abs(random.nextGaussian() * 3));
+	}
+}
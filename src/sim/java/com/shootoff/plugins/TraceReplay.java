@@ -0,0 +1,318 @@
+package com.shootoff.plugins;
+
+import com.shootoff.camera.shot.ShotColor;
+import com.shootoff.util.NamedThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays drills recorded with the {@code shootoff.randomTargetParDrill.traceDir} system property
+ * through the drill engine and the exercise's scoring, and checks that every replay ends with the
+ * recorded results. By default drills are replayed on a virtual clock as fast as possible; with
+ * {@code --speed 1} they run on the exercise's scheduler in real time. {@code --repeat} replays each
+ * drill several times, which makes a trace a throughput test.
+ *
+ * Usage: {@code gradle replay -Preplay.args="--trace traces/RandomTargetParDrill-1700000000000.trace --repeat 1000"}
+ */
+public class TraceReplay {
+	private static final String TARGET_RESOURCE = "/targets/ISSF.target";
+	private static final String NO_SHOOT_TARGET_RESOURCE = "/targets/NoShoot.target";
+	private static final long REAL_TIME_SLACK = TimeUnit.SECONDS.toNanos(30);
+
+	private final List<File> traces = new ArrayList<>();
+	private boolean realTime = false;
+	private int repeat = 1;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final TraceReplay replay = new TraceReplay();
+		replay.parse(args);
+		System.exit(replay.run() ? 0 : 1);
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			final String value = args[i + 1];
+			switch (args[i]) {
+			case "--trace":
+				traces.add(new File(value));
+				break;
+			case "--speed":
+				if ("max".equals(value)) {
+					realTime = false;
+				} else if ("1".equals(value)) {
+					realTime = true;
+				} else {
+					throw new IllegalArgumentException("Speed must be 1 or max: " + value);
+				}
+				break;
+			case "--repeat":
+				repeat = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (traces.isEmpty()) {
+			throw new IllegalArgumentException("No --trace given");
+		}
+	}
+
+	private boolean run() throws IOException, InterruptedException {
+		final ScoringIndex scoringIndex = compileScoringIndex(TARGET_RESOURCE);
+		final ScoringIndex noShootIndex = compileScoringIndex(NO_SHOOT_TARGET_RESOURCE);
+		final DrillMetrics metrics = new DrillMetrics();
+		final long started = System.nanoTime();
+		long shots = 0;
+		int replays = 0;
+		int mismatches = 0;
+
+		for (File trace : traces) {
+			final List<RecordedDrill> drills = read(trace);
+			for (int d = 0; d < drills.size(); d++) {
+				final RecordedDrill drill = drills.get(d);
+				if (!drill.finished) {
+					System.out.println(String.format("%s drill %d: no results recorded, skipped", trace.getName(), d));
+					continue;
+				}
+
+				for (int r = 0; r < repeat; r++) {
+					final ReplayDrillHost host = realTime ? replayRealTime(drill, scoringIndex, noShootIndex, metrics)
+							: replayVirtual(drill, scoringIndex, noShootIndex, metrics);
+					replays++;
+					shots += host.getShotsDelivered();
+
+					final String mismatch = compare(drill, host);
+					if (mismatch != null) {
+						mismatches++;
+						System.out.println(String.format("%s drill %d replay %d: %s", trace.getName(), d, r, mismatch));
+					} else if (r == 0) {
+						System.out.println(String.format("%s drill %d: %d shots, results match", trace.getName(), d,
+								drill.shots));
+					}
+				}
+			}
+		}
+
+		final double elapsed = (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+		System.out.println(String.format("%d replays, %d shots in %.3f s (%.0f shots/s)", replays, shots, elapsed,
+				shots / elapsed));
+		System.out.println(mismatches == 0 ? "All replays match" : mismatches + " replays differ");
+		return mismatches == 0;
+	}
+
+	private static ReplayDrillHost replayVirtual(RecordedDrill drill, ScoringIndex scoringIndex,
+			ScoringIndex noShootIndex, DrillMetrics metrics) {
+		final VirtualScheduler scheduler = new VirtualScheduler(0);
+		final ReplayDrillHost host = new ReplayDrillHost(scheduler, drill, scoringIndex, noShootIndex);
+		start(drill, host, scheduler, metrics);
+		scheduler.runUntilIdle();
+		return host;
+	}
+
+	private static ReplayDrillHost replayRealTime(RecordedDrill drill, ScoringIndex scoringIndex,
+			ScoringIndex noShootIndex, DrillMetrics metrics) throws InterruptedException {
+		// A single worker runs the engine's work in order, like the virtual clock does
+		try (TimingWheelScheduler scheduler = new TimingWheelScheduler(new NamedThreadFactory("TraceReplay"), metrics, 1)) {
+			final ReplayDrillHost host = new ReplayDrillHost(scheduler, drill, scoringIndex, noShootIndex);
+			start(drill, host, scheduler, metrics);
+
+			final long planned = TimeUnit.SECONDS.toNanos(drill.roundLimit * (long) (drill.delayMax + 1))
+					+ (long) (drill.roundLimit * drill.parTime * TimeUnit.SECONDS.toNanos(1));
+			host.awaitResults(planned + REAL_TIME_SLACK, TimeUnit.NANOSECONDS);
+			return host;
+		}
+	}
+
+	private static void start(RecordedDrill drill, ReplayDrillHost host, DrillScheduler scheduler,
+			DrillMetrics metrics) {
+		final ParDrillEngine engine = new ParDrillEngine(host, scheduler, metrics);
+		host.setEngine(engine);
+		engine.setParTime(drill.parTime);
+		engine.setDelayRange(drill.delayMin, drill.delayMax);
+		engine.setRoundLimit(drill.roundLimit);
+		engine.setTargets(drill.targets, drill.noShoots);
+		engine.newDrill(drill.seed, drill.placementWidth, drill.placementHeight, drill.minTravel);
+		engine.start(0, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return what differs from the recorded results, or null if the replay matches
+	 */
+	private static String compare(RecordedDrill drill, ReplayDrillHost host) {
+		if (!host.hasResults()) {
+			return "no results shown";
+		}
+
+		final DrillStatistics.Snapshot stats = host.getResults();
+		if (stats.shots != drill.shots || stats.misses != drill.misses || stats.parMisses != drill.parMisses
+				|| stats.pointsTotal != drill.pointsTotal || host.getNoShootHits() != drill.noShootHits
+				|| stats.timeTotal != drill.timeTotal) {
+			return String.format(
+					"replayed %d shots, %d missed, %d par misses, %d points, %d no-shoot hits, %.6f s; recorded %d, %d, %d, %d, %d, %.6f s",
+					stats.shots, stats.misses, stats.parMisses, stats.pointsTotal, host.getNoShootHits(), stats.timeTotal,
+					drill.shots, drill.misses, drill.parMisses, drill.pointsTotal, drill.noShootHits, drill.timeTotal);
+		}
+		return null;
+	}
+
+	private static ScoringIndex compileScoringIndex(String targetResource) throws IOException {
+		try (InputStream targetFile = TraceReplay.class.getResourceAsStream(targetResource)) {
+			if (targetFile == null) {
+				throw new IOException("Missing target resource " + targetResource);
+			}
+			return ScoringIndex.compile(targetFile);
+		}
+	}
+
+	private static List<RecordedDrill> read(File trace) throws IOException {
+		final List<RecordedDrill> drills = new ArrayList<>();
+		ShotTrace.read(trace, new ShotTrace.Visitor() {
+			private RecordedDrill drill;
+
+			@Override
+			public void drill(long seed, double parTime, int delayMin, int delayMax, int roundLimit, int targets,
+					int noShoots, double placementWidth, double placementHeight, double minTravel, double shootWidth,
+					double shootHeight, double noShootWidth, double noShootHeight) {
+				drill = new RecordedDrill();
+				drill.seed = seed;
+				drill.parTime = parTime;
+				drill.delayMin = delayMin;
+				drill.delayMax = delayMax;
+				drill.roundLimit = roundLimit;
+				drill.targets = targets;
+				drill.noShoots = noShoots;
+				drill.placementWidth = placementWidth;
+				drill.placementHeight = placementHeight;
+				drill.minTravel = minTravel;
+				drill.shootWidth = shootWidth;
+				drill.shootHeight = shootHeight;
+				drill.noShootWidth = noShootWidth;
+				drill.noShootHeight = noShootHeight;
+				drills.add(drill);
+			}
+
+			@Override
+			public void round(int round, long startedAt, long beep) {
+				if (drill != null) {
+					drill.addRound(new RecordedRound(startedAt, beep));
+				}
+			}
+
+			@Override
+			public void shot(long shotNanos, double arenaX, double arenaY, ShotColor color, boolean hit, int hitPoints) {
+				if (drill != null) {
+					drill.addShot(new RecordedShot(shotNanos, arenaX, arenaY, hit, hitPoints));
+				}
+			}
+
+			@Override
+			public void parMissed(int round, long parExpired) {
+				// The replayed engine decides the par misses itself, the results show whether it agrees
+			}
+
+			@Override
+			public void results(int shots, int misses, int parMisses, int pointsTotal, int noShootHits,
+					double timeTotal) {
+				if (drill != null) {
+					drill.finished = true;
+					drill.shots = shots;
+					drill.misses = misses;
+					drill.parMisses = parMisses;
+					drill.pointsTotal = pointsTotal;
+					drill.noShootHits = noShootHits;
+					drill.timeTotal = timeTotal;
+				}
+			}
+		});
+		return drills;
+	}
+
+	static final class RecordedDrill {
+		long seed;
+		double parTime;
+		int delayMin;
+		int delayMax;
+		int roundLimit;
+		int targets;
+		int noShoots;
+		double placementWidth;
+		double placementHeight;
+		double minTravel;
+		double shootWidth;
+		double shootHeight;
+		double noShootWidth;
+		double noShootHeight;
+		final List<RecordedRound> rounds = new ArrayList<>();
+		private final List<RecordedShot> earlyShots = new ArrayList<>();
+
+		boolean finished = false;
+		int shots;
+		int misses;
+		int parMisses;
+		int pointsTotal;
+		int noShootHits;
+		double timeTotal;
+
+		/**
+		 * Shots before the first round are delivered relative to its beep.
+		 */
+		private void addRound(RecordedRound round) {
+			if (rounds.isEmpty()) {
+				round.shots.addAll(earlyShots);
+				earlyShots.clear();
+			}
+			rounds.add(round);
+		}
+
+		/**
+		 * Shots belong to the last round that started before them.
+		 */
+		private void addShot(RecordedShot shot) {
+			if (rounds.isEmpty()) {
+				earlyShots.add(shot);
+			} else {
+				rounds.get(rounds.size() - 1).shots.add(shot);
+			}
+		}
+
+		/**
+		 * @param round the round number, starting at 1
+		 * @return the recorded round, or null if the recording has no such round
+		 */
+		RecordedRound getRound(int round) {
+			return round >= 1 && round <= rounds.size() ? rounds.get(round - 1) : null;
+		}
+	}
+
+	static final class RecordedRound {
+		final long startedAt;
+		final long beep;
+		final List<RecordedShot> shots = new ArrayList<>();
+
+		private RecordedRound(long startedAt, long beep) {
+			this.startedAt = startedAt;
+			this.beep = beep;
+		}
+	}
+
+	static final class RecordedShot {
+		final long shotNanos;
+		final double arenaX;
+		final double arenaY;
+		final boolean hit;
+		final int hitPoints;
+
+		private RecordedShot(long shotNanos, double arenaX, double arenaY, boolean hit, int hitPoints) {
+			this.shotNanos = shotNanos;
+			this.arenaX = arenaX;
+			this.arenaY = arenaY;
+			this.hit = hit;
+			this.hitPoints = hitPoints;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.shootoff.plugins;
+
+import java.util.PriorityQueue;
+
+/**
+ * Single threaded scheduler on a virtual clock. Time only moves when tasks are run, so a drill that
+ * takes minutes of wall clock time completes as fast as its tasks execute. Tasks with the same deadline
+ * run in the order they were scheduled.
+ *
+ * Not thread safe; tasks must be scheduled from the thread running the scheduler.
+ */
+class VirtualScheduler implements DrillScheduler {
+	private final PriorityQueue<VirtualTask> queue = new PriorityQueue<>();
+	private long now;
+	private long sequence = 0;
+
+	VirtualScheduler(long start) {
+		this.now = start;
+	}
+
+	@Override
+	public long now() {
+		return now;
+	}
+
+	@Override
+	public ScheduledTask scheduleAt(Runnable task, long deadline) {
+		final VirtualTask scheduled = new VirtualTask(task, Math.max(deadline, now), sequence++);
+		queue.add(scheduled);
+		return scheduled;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		scheduleAt(task, now);
+	}
+
+	/**
+	 * Advances the clock to the next pending task and runs it.
+	 *
+	 * @return false if no task was pending
+	 */
+	boolean runNext() {
+		VirtualTask task;
+		do {
+			task = queue.poll();
+			if (task == null) {
+				return false;
+			}
+		} while (task.cancelled);
+
+		now = task.deadline;
+		task.run();
+		return true;
+	}
+
+	/**
+	 * Runs tasks until none are pending or the clock would pass {@code until}, then sets the clock to
+	 * {@code until} if it is later.
+	 */
+	void runUntil(long until) {
+		while (!queue.isEmpty()) {
+			final VirtualTask task = queue.peek();
+			if (task.cancelled) {
+				queue.poll();
+				continue;
+			}
+			if (task.deadline > until) {
+				break;
+			}
+			runNext();
+		}
+		now = Math.max(now, until);
+	}
+
+	/**
+	 * Runs tasks until none are pending.
+	 *
+	 * @return the number of tasks run
+	 */
+	long runUntilIdle() {
+		long run = 0;
+		while (runNext()) {
+			run++;
+		}
+		return run;
+	}
+
+	int pending() {
+		return queue.size();
+	}
+
+	void clear() {
+		queue.clear();
+	}
+
+	private static final class VirtualTask implements ScheduledTask, Comparable<VirtualTask> {
+		private final Runnable task;
+		private final long deadline;
+		private final long sequence;
+		private boolean cancelled = false;
+		private boolean done = false;
+
+		private VirtualTask(Runnable task, long deadline, long sequence) {
+			this.task = task;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		private void run() {
+			done = true;
+			task.run();
+		}
+
+		@Override
+		public int compareTo(VirtualTask other) {
+			final int byDeadline = Long.compare(deadline, other.deadline);
+			return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+		}
+
+		@Override
+		public boolean cancel() {
+			if (done) {
+				return false;
+			}
+			cancelled = true;
+			return true;
+		}
+	}
+}